@@ -0,0 +1,506 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.apache.dubbo.common.URL;
+
+/**
+ * @Description: 访问日志配置, 通过dubbo.protocol.parameters/dubbo.consumer.parameters设置
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class AccessLogConfig {
+
+    public static final String ACCESS_LOG_PATH = "accesslogpath";
+    public static final String QUEUE_TYPE = "accesslogqueue";
+    public static final String QUEUE_SIZE = "accesslogqueuesize";
+    public static final String OVERFLOW_POLICY = "accesslogoverflow";
+    public static final String BLOCK_TIMEOUT = "accesslogblocktimeout";
+    public static final String SPILL_MAX_BYTES = "accesslogspillmaxbytes";
+    public static final String WRITER_TYPE = "accesslogwriter";
+    public static final String FLUSH_BYTES = "accesslogflushbytes";
+    public static final String FLUSH_INTERVAL = "accesslogflushinterval";
+    public static final String SEGMENT_SIZE = "accesslogsegmentsize";
+    public static final String ROLLING = "accesslogrolling";
+    public static final String DATE_PATTERN = "accesslogdatepattern";
+    public static final String MAX_FILE_SIZE = "accesslogmaxfilesize";
+    public static final String MAX_FILES = "accesslogmaxfiles";
+    public static final String MAX_TOTAL_BYTES = "accesslogmaxtotalbytes";
+    public static final String COMPRESS = "accesslogcompress";
+    public static final String TRACE_INDEX = "accesslogtraceindex";
+    public static final String MILLIS = "accesslogmillis";
+    public static final String JSON_MAX_LENGTH = "accesslogjsonmaxlength";
+    public static final String JSON_EXCLUDES = "accesslogjsonexcludes";
+    public static final String JSON_ASYNC = "accesslogjsonasync";
+    public static final String STATS = "accesslogstats";
+    public static final String WAIT_STRATEGY = "accesslogwaitstrategy";
+    public static final String WAIT_PARK_MICROS = "accesslogwaitparkmicros";
+    public static final String SAMPLE_RATE = "accesslogsamplerate";
+    public static final String SAMPLE_PER_SECOND = "accesslogsamplepersecond";
+    public static final String SLOW_MILLIS = "accesslogslowmillis";
+    public static final String STATS_INTERVAL = "accesslogstatsinterval";
+    public static final String SHARDS = "accesslogshards";
+    public static final String SHARD_BY = "accesslogshardby";
+    public static final String FAILURE_LIMIT = "accesslogfailurelimit";
+    public static final String FAILURE_PER_SECOND = "accesslogfailurepersecond";
+    public static final String FAILURE_INTERVAL = "accesslogfailureinterval";
+
+    public static final String ROLLING_TIME = "time";
+    public static final String ROLLING_SIZE = "size";
+    public static final String ROLLING_TIME_SIZE = "timesize";
+
+    public static final String SHARD_BY_THREAD = "thread";
+    public static final String SHARD_BY_SERVICE = "service";
+
+    private String path;
+
+    private String queueType = RecordQueue.BLOCKING;
+
+    private int queueSize = 10000;
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+    /**
+     * BLOCK策略最长等待毫秒数
+     */
+    private long blockTimeoutMillis = 10;
+
+    private long spillMaxBytes = 512L * 1024 * 1024;
+
+    private String writerType = LogWriter.STREAM;
+
+    /**
+     * channel输出: 缓冲达到该字节数时写出
+     */
+    private long flushBytes = 256 * 1024;
+
+    /**
+     * channel输出: 记录在缓冲中的最长停留毫秒数
+     */
+    private long flushIntervalMillis = 1000;
+
+    /**
+     * mmap输出: 每段文件预分配的字节数
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+
+    private String rollingType = ROLLING_TIME;
+
+    private String datePattern = "yyyy-MM-dd";
+
+    /**
+     * size/timesize滚动: 单个文件最大字节数
+     */
+    private long maxFileSize = 256L * 1024 * 1024;
+
+    /**
+     * 最多保留的滚动文件数, 0不限制
+     */
+    private int maxFiles;
+
+    /**
+     * 滚动文件最大总字节数, 0不限制
+     */
+    private long maxTotalBytes;
+
+    /**
+     * 滚动后的文件是否gzip压缩
+     */
+    private boolean compress;
+
+    /**
+     * 是否为滚动后的文件建立traceId索引
+     */
+    private boolean traceIndex;
+
+    /**
+     * 日志行时间是否输出毫秒
+     */
+    private boolean millis;
+
+    /**
+     * 参数和返回值序列化后的最大字符数, 0不限制
+     */
+    private int jsonMaxLength;
+
+    /**
+     * 序列化时排除的字段, 格式: com.foo.User:password|idCard;*:secret
+     */
+    private String jsonExcludes;
+
+    /**
+     * 是否在日志线程中序列化参数和返回值
+     */
+    private boolean jsonAsync;
+
+    /**
+     * 日志线程的等待策略, blocking/spin/timed; 为空时每次唤醒提交到单线程线程池
+     */
+    private String waitStrategy;
+
+    /**
+     * timed等待策略的park时间(微秒)
+     */
+    private long waitParkMicros = 1000;
+
+    /**
+     * 是否统计调用耗时分布和成功失败次数
+     */
+    private boolean stats = true;
+
+    /**
+     * 统计汇总文件的输出间隔(秒), 0为不输出
+     */
+    private long statsIntervalSeconds = 60;
+
+    /**
+     * 采样比例, 0-1, 1为全部记录
+     */
+    private double sampleRate = 1;
+
+    /**
+     * 每个方法每秒最多记录的条数, 0为不限制
+     */
+    private int samplePerSecond;
+
+    /**
+     * 耗时不小于该值(毫秒)的调用不受采样限制, 0为不按耗时放行
+     */
+    private long slowMillis = 1000;
+
+    /**
+     * 写同一日志的线程和文件数, 每个分片一个文件
+     */
+    private int shards = 1;
+
+    /**
+     * 记录分到哪个分片: thread按调用线程, service按服务
+     */
+    private String shardBy = SHARD_BY_THREAD;
+
+    /**
+     * 同一方法的同一种失败在每个汇总周期内输出完整堆栈的次数
+     */
+    private int failureLimit = 5;
+
+    /**
+     * 每秒最多输出的失败堆栈数, 0不限制
+     */
+    private double failurePerSecond = 10;
+
+    /**
+     * 失败汇总的输出间隔(秒), 0为不汇总
+     */
+    private long failureIntervalSeconds = 60;
+
+    public AccessLogConfig() {
+    }
+
+    public AccessLogConfig(String path) {
+        this.path = path;
+    }
+
+    /***
+     * 从url参数解析配置
+     * @param url   invoker url
+     * @return AccessLogConfig
+     */
+    public static AccessLogConfig from(URL url) {
+        AccessLogConfig config = new AccessLogConfig(url.getParameter(ACCESS_LOG_PATH));
+        config.setQueueType(url.getParameter(QUEUE_TYPE, config.getQueueType()));
+        config.setQueueSize(url.getParameter(QUEUE_SIZE, config.getQueueSize()));
+        config.setOverflowPolicy(OverflowPolicy.parse(url.getParameter(OVERFLOW_POLICY)));
+        config.setBlockTimeoutMillis(url.getParameter(BLOCK_TIMEOUT, config.getBlockTimeoutMillis()));
+        config.setSpillMaxBytes(url.getParameter(SPILL_MAX_BYTES, config.getSpillMaxBytes()));
+        config.setWriterType(url.getParameter(WRITER_TYPE, config.getWriterType()));
+        config.setFlushBytes(url.getParameter(FLUSH_BYTES, config.getFlushBytes()));
+        config.setFlushIntervalMillis(url.getParameter(FLUSH_INTERVAL, config.getFlushIntervalMillis()));
+        config.setSegmentSize(url.getParameter(SEGMENT_SIZE, config.getSegmentSize()));
+        config.setRollingType(url.getParameter(ROLLING, config.getRollingType()));
+        config.setDatePattern(url.getParameter(DATE_PATTERN, config.getDatePattern()));
+        config.setMaxFileSize(url.getParameter(MAX_FILE_SIZE, config.getMaxFileSize()));
+        config.setMaxFiles(url.getParameter(MAX_FILES, config.getMaxFiles()));
+        config.setMaxTotalBytes(url.getParameter(MAX_TOTAL_BYTES, config.getMaxTotalBytes()));
+        config.setCompress(url.getParameter(COMPRESS, config.isCompress()));
+        config.setTraceIndex(url.getParameter(TRACE_INDEX, config.isTraceIndex()));
+        config.setMillis(url.getParameter(MILLIS, config.isMillis()));
+        config.setJsonMaxLength(url.getParameter(JSON_MAX_LENGTH, config.getJsonMaxLength()));
+        config.setJsonExcludes(url.getParameter(JSON_EXCLUDES));
+        config.setJsonAsync(url.getParameter(JSON_ASYNC, config.isJsonAsync()));
+        config.setWaitStrategy(url.getParameter(WAIT_STRATEGY));
+        config.setWaitParkMicros(url.getParameter(WAIT_PARK_MICROS, config.getWaitParkMicros()));
+        config.setStats(url.getParameter(STATS, config.isStats()));
+        config.setStatsIntervalSeconds(url.getParameter(STATS_INTERVAL, config.getStatsIntervalSeconds()));
+        config.setSampleRate(url.getParameter(SAMPLE_RATE, config.getSampleRate()));
+        config.setSamplePerSecond(url.getParameter(SAMPLE_PER_SECOND, config.getSamplePerSecond()));
+        config.setSlowMillis(url.getParameter(SLOW_MILLIS, config.getSlowMillis()));
+        config.setShards(url.getParameter(SHARDS, config.getShards()));
+        config.setShardBy(url.getParameter(SHARD_BY, config.getShardBy()));
+        config.setFailureLimit(url.getParameter(FAILURE_LIMIT, config.getFailureLimit()));
+        config.setFailurePerSecond(url.getParameter(FAILURE_PER_SECOND, config.getFailurePerSecond()));
+        config.setFailureIntervalSeconds(url.getParameter(FAILURE_INTERVAL, config.getFailureIntervalSeconds()));
+        return config;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getQueueType() {
+        return queueType;
+    }
+
+    public void setQueueType(String queueType) {
+        this.queueType = queueType;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public long getBlockTimeoutMillis() {
+        return blockTimeoutMillis;
+    }
+
+    public void setBlockTimeoutMillis(long blockTimeoutMillis) {
+        this.blockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    public long getSpillMaxBytes() {
+        return spillMaxBytes;
+    }
+
+    public void setSpillMaxBytes(long spillMaxBytes) {
+        this.spillMaxBytes = spillMaxBytes;
+    }
+
+    public String getWriterType() {
+        return writerType;
+    }
+
+    public void setWriterType(String writerType) {
+        this.writerType = writerType;
+    }
+
+    public long getFlushBytes() {
+        return flushBytes;
+    }
+
+    public void setFlushBytes(long flushBytes) {
+        this.flushBytes = flushBytes;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public String getRollingType() {
+        return rollingType;
+    }
+
+    public void setRollingType(String rollingType) {
+        this.rollingType = rollingType;
+    }
+
+    public String getDatePattern() {
+        return datePattern;
+    }
+
+    public void setDatePattern(String datePattern) {
+        this.datePattern = datePattern;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    public void setMaxFiles(int maxFiles) {
+        this.maxFiles = maxFiles;
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    public void setMaxTotalBytes(long maxTotalBytes) {
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public boolean isTraceIndex() {
+        return traceIndex;
+    }
+
+    public void setTraceIndex(boolean traceIndex) {
+        this.traceIndex = traceIndex;
+    }
+
+    public boolean isMillis() {
+        return millis;
+    }
+
+    public void setMillis(boolean millis) {
+        this.millis = millis;
+    }
+
+    public int getJsonMaxLength() {
+        return jsonMaxLength;
+    }
+
+    public void setJsonMaxLength(int jsonMaxLength) {
+        this.jsonMaxLength = jsonMaxLength;
+    }
+
+    public String getJsonExcludes() {
+        return jsonExcludes;
+    }
+
+    public void setJsonExcludes(String jsonExcludes) {
+        this.jsonExcludes = jsonExcludes;
+    }
+
+    public boolean isJsonAsync() {
+        return jsonAsync;
+    }
+
+    public void setJsonAsync(boolean jsonAsync) {
+        this.jsonAsync = jsonAsync;
+    }
+
+    public String getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public void setWaitStrategy(String waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    public long getWaitParkMicros() {
+        return waitParkMicros;
+    }
+
+    public void setWaitParkMicros(long waitParkMicros) {
+        this.waitParkMicros = waitParkMicros;
+    }
+
+    public boolean isStats() {
+        return stats;
+    }
+
+    public void setStats(boolean stats) {
+        this.stats = stats;
+    }
+
+    public long getStatsIntervalSeconds() {
+        return statsIntervalSeconds;
+    }
+
+    public void setStatsIntervalSeconds(long statsIntervalSeconds) {
+        this.statsIntervalSeconds = statsIntervalSeconds;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getSamplePerSecond() {
+        return samplePerSecond;
+    }
+
+    public void setSamplePerSecond(int samplePerSecond) {
+        this.samplePerSecond = samplePerSecond;
+    }
+
+    public long getSlowMillis() {
+        return slowMillis;
+    }
+
+    public void setSlowMillis(long slowMillis) {
+        this.slowMillis = slowMillis;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public String getShardBy() {
+        return shardBy;
+    }
+
+    public void setShardBy(String shardBy) {
+        this.shardBy = shardBy;
+    }
+
+    public int getFailureLimit() {
+        return failureLimit;
+    }
+
+    public void setFailureLimit(int failureLimit) {
+        this.failureLimit = failureLimit;
+    }
+
+    public double getFailurePerSecond() {
+        return failurePerSecond;
+    }
+
+    public void setFailurePerSecond(double failurePerSecond) {
+        this.failurePerSecond = failurePerSecond;
+    }
+
+    public long getFailureIntervalSeconds() {
+        return failureIntervalSeconds;
+    }
+
+    public void setFailureIntervalSeconds(long failureIntervalSeconds) {
+        this.failureIntervalSeconds = failureIntervalSeconds;
+    }
+}
@@ -0,0 +1,68 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.msj.dubbo.spi.extension.util.TokenBucket;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Description: 方法级别的访问日志采样, 按比例和每秒条数两种方式组合; 比例采样由traceId的哈希决定,
+ * 同一个traceId在各跳上得到相同的结果
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+final class AccessLogSampler {
+
+    /**
+     * 上游的采样结果, 随调用传递, 值为1或0
+     */
+    static final String SAMPLED_KEY = "accesslogsampled";
+
+    private final double rate;
+
+    /**
+     * 每秒条数限制, 不限制时为null
+     */
+    private final TokenBucket bucket;
+
+    private AccessLogSampler(double rate, TokenBucket bucket) {
+        this.rate = rate;
+        this.bucket = bucket;
+    }
+
+    /***
+     * @param rate  采样比例, 0-1
+     * @param perSecond 每秒最多记录的条数, 0为不限制
+     * @return 不需要采样时返回null
+     */
+    static AccessLogSampler of(double rate, int perSecond) {
+        if (rate >= 1 && perSecond <= 0) {
+            return null;
+        }
+        return new AccessLogSampler(Math.max(0, rate), perSecond > 0 ? new TokenBucket(perSecond) : null);
+    }
+
+    /***
+     * 是否记录本次调用
+     * @param traceId   为空时按随机数采样
+     */
+    boolean sample(String traceId) {
+        if (rate < 1 && fraction(traceId) >= rate) {
+            return false;
+        }
+        return bucket == null || bucket.tryAcquire();
+    }
+
+    /***
+     * traceId映射到[0, 1), 只依赖String.hashCode, 各进程结果一致
+     */
+    private static double fraction(String traceId) {
+        if (traceId == null || traceId.isEmpty()) {
+            return ThreadLocalRandom.current().nextDouble();
+        }
+        long h = traceId.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 29;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+}
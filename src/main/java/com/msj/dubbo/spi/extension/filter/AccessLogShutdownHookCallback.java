@@ -0,0 +1,18 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.apache.dubbo.common.lang.ShutdownHookCallback;
+
+/**
+ * @Description: dubbo的shutdown hook中关闭所有AccessLogWrapper和async方式的TraceLogger,
+ * 写完队列中的访问日志、traceId日志和统计并释放日志线程和文件
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class AccessLogShutdownHookCallback implements ShutdownHookCallback {
+
+    @Override
+    public void callback() {
+        AccessLogWrapper.shutdownAll();
+        TraceLogger.shutdownAll();
+    }
+}
@@ -0,0 +1,245 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.msj.dubbo.spi.extension.util.LatencyHistogram;
+import org.apache.dubbo.common.utils.NamedThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description: 按 (服务, 方法, 消费者/提供者) 统计调用耗时分布和成功失败次数, 每个AccessLogWrapper一份,
+ * 可通过 {@link #all()} 在进程内获取, 也可定期把区间统计写入汇总文件
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class AccessLogStats {
+
+    public static final String CONSUMER = "consumer";
+
+    public static final String PROVIDER = "provider";
+
+    private static final List<AccessLogStats> ALL = new CopyOnWriteArrayList<AccessLogStats>();
+
+    private static final ScheduledExecutorService REPORTER = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("dubbo-accesslog-stats", true));
+
+    private final String name;
+
+    private final ConcurrentMap<String, MethodStats> methods = new ConcurrentHashMap<String, MethodStats>();
+
+    private final List<Reporter> reporters = new ArrayList<Reporter>();
+
+    /***
+     * @param name  统计名称, 与访问日志文件前缀相同
+     */
+    public AccessLogStats(String name) {
+        this.name = name;
+        ALL.add(this);
+    }
+
+    /***
+     * 进程内所有的统计
+     */
+    public static List<AccessLogStats> all() {
+        return Collections.unmodifiableList(ALL);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /***
+     * 获取方法的统计, 调用方应缓存返回值, 避免每次调用拼接key
+     */
+    public MethodStats method(String serviceKey, String methodName, String side) {
+        String key = serviceKey + "#" + methodName + "#" + side;
+        MethodStats stats = methods.get(key);
+        if (stats == null) {
+            stats = methods.computeIfAbsent(key, k -> new MethodStats(serviceKey, methodName, side));
+        }
+        return stats;
+    }
+
+    /***
+     * 当前所有方法的累计快照
+     */
+    public List<MethodSnapshot> snapshot() {
+        List<MethodSnapshot> result = new ArrayList<MethodSnapshot>(methods.size());
+        for (MethodStats stats : methods.values()) {
+            result.add(stats.snapshot());
+        }
+        return result;
+    }
+
+    /***
+     * 定期把区间统计写入日志, {@link #close()} 时输出最后一个区间并关闭汇总文件
+     * @param logger    汇总文件
+     * @param intervalSeconds   间隔秒数
+     */
+    public synchronized void scheduleReport(final AsyncLogger logger, long intervalSeconds) {
+        Reporter reporter = new Reporter(logger);
+        reporter.future = REPORTER.scheduleWithFixedDelay(reporter, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        reporters.add(reporter);
+    }
+
+    /***
+     * 停止定期输出, 并从 {@link #all()} 中移除
+     */
+    public synchronized void close() {
+        ALL.remove(this);
+        for (Reporter reporter : reporters) {
+            reporter.future.cancel(false);
+            reporter.run();
+            reporter.logger.shutdown();
+        }
+        reporters.clear();
+    }
+
+    /**
+     * 输出区间统计的定时任务, 保存上一次输出时的累计快照
+     */
+    private final class Reporter implements Runnable {
+        private final AsyncLogger logger;
+        private final ConcurrentMap<String, MethodSnapshot> previous = new ConcurrentHashMap<String, MethodSnapshot>();
+        private volatile ScheduledFuture<?> future;
+
+        Reporter(AsyncLogger logger) {
+            this.logger = logger;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (MethodStats stats : methods.values()) {
+                    MethodSnapshot current = stats.snapshot();
+                    String key = current.getKey();
+                    MethodSnapshot interval = current.minus(previous.put(key, current));
+                    if (interval.getSuccess() + interval.getFailure() == 0) {
+                        continue;
+                    }
+                    logger.log(interval.toString());
+                }
+                logger.flush();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 单个方法的统计, 耗时单位为微秒
+     */
+    public static final class MethodStats {
+        private final String service;
+        private final String method;
+        private final String side;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder success = new LongAdder();
+        private final LongAdder failure = new LongAdder();
+
+        MethodStats(String service, String method, String side) {
+            this.service = service;
+            this.method = method;
+            this.side = side;
+        }
+
+        /***
+         * 记录一次调用
+         * @param elapsedNanos  耗时
+         * @param failed    是否失败
+         */
+        public void record(long elapsedNanos, boolean failed) {
+            histogram.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+            if (failed) {
+                failure.increment();
+            } else {
+                success.increment();
+            }
+        }
+
+        public MethodSnapshot snapshot() {
+            return new MethodSnapshot(service, method, side, success.sum(), failure.sum(), histogram.snapshot());
+        }
+    }
+
+    /**
+     * 单个方法的统计快照, 耗时单位为微秒
+     */
+    public static final class MethodSnapshot {
+        private final String service;
+        private final String method;
+        private final String side;
+        private final long success;
+        private final long failure;
+        private final LatencyHistogram.Snapshot latency;
+
+        MethodSnapshot(String service, String method, String side, long success, long failure,
+                       LatencyHistogram.Snapshot latency) {
+            this.service = service;
+            this.method = method;
+            this.side = side;
+            this.success = success;
+            this.failure = failure;
+            this.latency = latency;
+        }
+
+        String getKey() {
+            return service + "#" + method + "#" + side;
+        }
+
+        public String getService() {
+            return service;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getSide() {
+            return side;
+        }
+
+        public long getSuccess() {
+            return success;
+        }
+
+        public long getFailure() {
+            return failure;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        /***
+         * 与较早快照的差值
+         */
+        public MethodSnapshot minus(MethodSnapshot previous) {
+            if (previous == null) {
+                return this;
+            }
+            return new MethodSnapshot(service, method, side, success - previous.success, failure - previous.failure,
+                    latency.minus(previous.latency));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%s %s %s success:%d failed:%d mean:%.3fms p50:%.3fms p90:%.3fms p99:%.3fms p999:%.3fms max:%.3fms",
+                    side, service, method, success, failure, latency.getMean() / 1000.0,
+                    latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(90) / 1000.0,
+                    latency.getValueAtPercentile(99) / 1000.0, latency.getValueAtPercentile(99.9) / 1000.0,
+                    latency.getMax() / 1000.0);
+        }
+    }
+}
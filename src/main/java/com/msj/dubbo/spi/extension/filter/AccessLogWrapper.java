@@ -1,8 +1,8 @@
 package com.msj.dubbo.spi.extension.filter;
 
-import com.alibaba.fastjson.JSON;
+import com.msj.dubbo.spi.extension.trace.TraceContext;
 import com.msj.dubbo.spi.extension.util.ThreadMdcUtil;
-import org.apache.dubbo.common.constants.CommonConstants;
+import org.apache.dubbo.common.URL;
 import org.apache.dubbo.common.logger.Logger;
 import org.apache.dubbo.common.logger.LoggerFactory;
 import org.apache.dubbo.common.utils.StringUtils;
@@ -10,8 +10,11 @@ import org.apache.dubbo.rpc.*;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @Description:
@@ -22,248 +25,568 @@ import java.util.Map;
 public class AccessLogWrapper {
 
     private static final Logger logger = LoggerFactory.getLogger(AccessLogWrapper.class);
-    private static final String LEVEL_ARG_KEY = "loglevel";
-    private final AsyncLogger log;
+    /**
+     * 最多缓存的invoker数, 超过后新invoker按服务共用缓存, 已缓存的不受影响
+     */
+    static final int MAX_CACHED_INVOKERS = 4096;
+    /**
+     * 清理已失效invoker的最小间隔
+     */
+    private static final long EVICT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * 进程内共用的实例, key为 日志目录/文件名前缀
+     */
+    private static final ConcurrentMap<String, AccessLogWrapper> WRAPPERS = new ConcurrentHashMap<String, AccessLogWrapper>();
+    /**
+     * 日志分片, 每个分片一个日志线程和文件
+     */
+    private final AsyncLogger[] logs;
+    /**
+     * 按服务选择分片, 否则按调用线程
+     */
+    private final boolean shardByService;
+    /**
+     * 调用失败的堆栈日志, 按失败类型限流
+     */
+    private final FailureLogger failureLogger;
+    private final JsonLogSerializer serializer;
+    /**
+     * 参数和返回值是否延迟到日志线程序列化
+     */
+    private final boolean deferSerialization;
+    /**
+     * 二进制格式按字段写入, 所有记录都以AccessEvent进入队列
+     */
+    private final boolean binary;
+    /**
+     * 耗时和成功失败统计, 未开启时为null
+     */
+    private final AccessLogStats stats;
+    /**
+     * 采样等方法级别配置的默认值
+     */
+    private final AccessLogConfig config;
+    private final ConcurrentMap<Invoker<?>, InvokerLogMeta> invokerMetas = new ConcurrentHashMap<Invoker<?>, InvokerLogMeta>();
+    /**
+     * invoker缓存已满时未缓存的invoker按服务key共用的缓存, 以该服务第一个invoker的url为准;
+     * 前缀不再每次调用重新计算, 每秒条数的限制对这些invoker也生效
+     */
+    private final ConcurrentMap<String, InvokerLogMeta> sharedMetas = new ConcurrentHashMap<String, InvokerLogMeta>();
+    /**
+     * 上次清理失效invoker的时间
+     */
+    private volatile long lastEviction = System.nanoTime() - EVICT_INTERVAL_NANOS;
+    /**
+     * shutdown之后调用直接透传, 不再记录
+     */
+    private volatile boolean closed;
 
     public AccessLogWrapper(String path, String logFileNamePrefix) {
-        String home = null;
-        if (!StringUtils.isBlank(path)) {
-            home = path;
-        } else {
-            home = System.getProperty("catalina.base");
-            if (home == null)
-                home = "target";
-            else
-                home = home + "/logs";
-            try {
-                home = new File(home).getCanonicalPath();
-            } catch (IOException e) {
-                logger.error("logger home path failed: ", e);
+        this(new AccessLogConfig(path), logFileNamePrefix);
+    }
+
+    public AccessLogWrapper(AccessLogConfig config, String logFileNamePrefix) {
+        this.config = config;
+        String home = logHome(config.getPath());
+        binary = LogWriter.BINARY.equalsIgnoreCase(config.getWriterType());
+        String suffix = binary ? ".bin" : ".log";
+        int shards = Math.max(1, config.getShards());
+        logs = new AsyncLogger[shards];
+        for (int i = 0; i < shards; i++) {
+            //只有一个分片时文件名不变
+            String prefix = shards == 1 ? logFileNamePrefix : logFileNamePrefix + "-" + i;
+            logs[i] = new AsyncLogger(home + "/" + prefix + ".", suffix, config);
+        }
+        shardByService = AccessLogConfig.SHARD_BY_SERVICE.equalsIgnoreCase(config.getShardBy());
+        failureLogger = new FailureLogger(logger, config.getFailureLimit(), config.getFailurePerSecond(),
+                config.getFailureIntervalSeconds());
+        serializer = new JsonLogSerializer(config.getJsonMaxLength(), JsonLogSerializer.parseExcludes(config.getJsonExcludes()));
+        deferSerialization = config.isJsonAsync();
+        if (config.isStats()) {
+            stats = new AccessLogStats(logFileNamePrefix);
+            if (config.getStatsIntervalSeconds() > 0) {
+                stats.scheduleReport(new AsyncLogger(home + "/" + logFileNamePrefix + "-stats.", ".log"),
+                        config.getStatsIntervalSeconds());
             }
+        } else {
+            stats = null;
         }
-        log = new AsyncLogger(home + "/" + logFileNamePrefix + ".", ".log", 10000);
         logger.info("dubbo log access logging in : " + home);
     }
 
+    /***
+     * 同一日志目录和文件名前缀在进程内共用一个实例, 避免多个filter或应用重复创建日志线程写同一个文件;
+     * 配置以第一次创建时的url为准
+     * @param url   invoker url
+     * @param logFileNamePrefix 文件名前缀
+     * @return AccessLogWrapper
+     */
+    public static AccessLogWrapper of(URL url, String logFileNamePrefix) {
+        String key = logHome(url.getParameter(AccessLogConfig.ACCESS_LOG_PATH)) + "/" + logFileNamePrefix;
+        AccessLogWrapper wrapper = WRAPPERS.get(key);
+        if (wrapper == null) {
+            wrapper = WRAPPERS.computeIfAbsent(key, k -> new AccessLogWrapper(AccessLogConfig.from(url), logFileNamePrefix));
+        }
+        return wrapper;
+    }
+
+    /***
+     * 关闭进程内所有共用的实例, 由dubbo的shutdown hook调用, 见 {@link AccessLogShutdownHookCallback}
+     */
+    public static void shutdownAll() {
+        for (AccessLogWrapper wrapper : WRAPPERS.values()) {
+            wrapper.shutdown();
+        }
+    }
+
+    /***
+     * 写完队列中的日志后停止日志线程、统计输出并关闭文件, 并从进程内共用的实例中移除;
+     * 之后经过该实例的调用不再记录日志, 可以重复调用
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        WRAPPERS.values().remove(this);
+        for (AsyncLogger log : logs) {
+            log.shutdown();
+        }
+        if (stats != null) {
+            stats.close();
+        }
+        failureLogger.shutdown();
+        invokerMetas.clear();
+        sharedMetas.clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /***
+     * 日志目录, 未配置时使用tomcat的logs目录, 不在tomcat中时使用target目录
+     */
+    static String logHome(String path) {
+        if (!StringUtils.isBlank(path)) {
+            return path;
+        }
+        String home = System.getProperty("catalina.base");
+        if (home == null)
+            home = "target";
+        else
+            home = home + "/logs";
+        try {
+            home = new File(home).getCanonicalPath();
+        } catch (IOException e) {
+            logger.error("logger home path failed: ", e);
+        }
+        return home;
+    }
+
     /**
-     * 代理执行LogFilter invoke
+     * 代理执行LogFilter invoke, 异步调用在结果完成时记录日志, 不阻塞调用线程
      *
      * @param invoker    invoker
      * @param invocation invocation
      * @return Result
      */
     public Result invoke(Invoker<?> invoker, Invocation invocation) {
-        Result result = null;
-        RpcException ex = null;
-        LogContext logContext = new LogContext(invoker, invocation);
-        long start = System.currentTimeMillis();
+        if (closed) {
+            return invoker.invoke(invocation);
+        }
+        InvokerLogMeta.MethodLogMeta methodMeta = invokerMeta(invoker).method(invocation.getMethodName(),
+                invocation.getParameterTypes());
+        AccessEvent event = new AccessEvent(methodMeta, serializer);
+        if (methodMeta.sampler != null) {
+            event.sampled = sample(event, methodMeta.sampler);
+        }
+        long start = System.nanoTime();
+        Result result;
         try {
             result = invoker.invoke(invocation);
         } catch (RpcException e) {
-            ex = e;
+            log(event, invoker, invocation, e, null, System.nanoTime() - start);
+            //Filter里不能吞掉异常
+            throw e;
+        }
+        if (result instanceof AsyncRpcResult) {
+            result.whenCompleteWithContext((r, t) -> log(event, invoker, invocation, unwrap(t), r,
+                    System.nanoTime() - start));
+        } else {
+            log(event, invoker, invocation, null, result, System.nanoTime() - start);
         }
-        long end = System.currentTimeMillis();
-        log(logContext, invoker, invocation, ex, result, (end - start));
-        //Filter里不能吞掉异常
-        if (ex != null)
-            throw ex;
         return result;
     }
 
+    /***
+     * 决定本次调用是否记录; 上游已有结果时沿用, 消费者端把结果传给下游
+     */
+    private static boolean sample(AccessEvent event, AccessLogSampler sampler) {
+        RpcContext context = RpcContext.getContext();
+        String upstream = context.getAttachment(AccessLogSampler.SAMPLED_KEY);
+        boolean sampled;
+        if (StringUtils.isEmpty(upstream)) {
+            sampled = sampler.sample(event.traceId);
+        } else {
+            sampled = "1".equals(upstream);
+        }
+        if (event.consumerSide) {
+            context.setAttachment(AccessLogSampler.SAMPLED_KEY, sampled ? "1" : "0");
+        }
+        return sampled;
+    }
+
+    private static Throwable failure(Throwable thrown, Result result) {
+        if (thrown != null) {
+            return thrown;
+        }
+        if (result != null && result.hasException()) {
+            Throwable exception = result.getException();
+            return exception != null ? exception : new RpcException("result has exception");
+        }
+        return null;
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
     /**
-     * 打印日志
+     * 打印日志. 成功的调用把事件放入队列, 在日志线程中格式化; 失败的调用和需要在调用线程中序列化参数时立即格式化
      *
-     * @param logContext 日志调用前的上下文
+     * @param event      调用前保存的上下文
      * @param invoker    invoker
      * @param inv        inv
-     * @param ex         异常
+     * @param thrown     调用抛出或异步完成时的异常
      * @param result     执行结果
-     * @param elapsed    调用时长
+     * @param elapsedNanos 调用时长
      */
-    private void log(LogContext logContext, Invoker<?> invoker, Invocation inv, RpcException ex, Result result, long elapsed) {
+    private void log(AccessEvent event, Invoker<?> invoker, Invocation inv, Throwable thrown, Result result,
+                     long elapsedNanos) {
+        InvokerLogMeta.MethodLogMeta methodMeta = event.methodMeta;
+        //调用抛出异常或结果中带有异常(含异步结果)都是失败, 统计、采样、失败日志和记录内容以此为准
+        Throwable ex = failure(thrown, result);
+        boolean failed = ex != null;
+        if (stats != null) {
+            methodMeta.stats(stats, event.consumerSide).record(elapsedNanos, failed);
+        }
+        //未被采样的调用, 失败和慢调用仍然记录
+        if (!event.sampled && !failed && (methodMeta.slowNanos <= 0 || elapsedNanos < methodMeta.slowNanos)) {
+            return;
+        }
         try {
-            StringBuilder logRecord = new StringBuilder();
-            String traceId = RpcContext.getContext().getAttachment(ThreadMdcUtil.LOG_TRACE_ID);
-            logRecord.append("["+traceId+"]");
-            appendBeforeInvokeLog(logRecord, logContext, invoker, inv);
-            appendAfterInvokeLog(logRecord, logContext, ex, result, elapsed);
-            if (logRecord.length() == 0) return;
+            AsyncLogger log = shard(methodMeta);
+            event.complete(inv, ex, result, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            if (!failed && (!event.withArgs || deferSerialization)) {
+                if (event.withArgs) {
+                    event.args = snapshot(event.args);
+                }
+                log.log(event);
+                return;
+            }
+            if (binary) {
+                //失败或不延迟序列化时在调用线程中序列化, 失败日志和二进制记录共用结果
+                event.serialize();
+                if (failed && failureLogger.record(methodMeta.prefix, ex)) {
+                    StringBuilder logRecord = new StringBuilder(methodMeta.prefix.length() + 192);
+                    event.render(logRecord);
+                    failureLogger.warn("service invoke failed! \n" + logRecord, ex);
+                }
+                log.log(event);
+                return;
+            }
+            StringBuilder logRecord = new StringBuilder(methodMeta.prefix.length() + 192);
+            event.render(logRecord);
+            if (failed && failureLogger.record(methodMeta.prefix, ex)) {
+                failureLogger.warn("service invoke failed! \n" + logRecord, ex);
+            }
             log.log(logRecord.toString());
         } catch (Throwable t) {
             logger.warn("Exception in AccessLogFilter of service(" + invoker + " -> " + inv + ")", t);
         }
     }
 
-    /**
-     * 拼接调用前的日志
-     *
-     * @param logRecord  append container
-     * @param logContext 日志调用前的上下文
-     * @param invoker    invoker
-     * @param inv        inv
+    /***
+     * 同一线程或同一服务的记录总是进入同一个分片, 保持先后顺序
      */
-    private void appendBeforeInvokeLog(StringBuilder logRecord, LogContext logContext, Invoker<?> invoker, Invocation inv) {
-        String consumer;
-        int consumerPort;
-        String provider;
-        int providerPort;
-        String consumerApp;
-        String providerApp;
-        RpcContext rpcContext = RpcContext.getContext();
-        if (logContext.isConsumerSide()) {
-            consumer = logContext.getLocalHost();
-            consumerPort = logContext.getLocalPort();
-            provider = logContext.getRemoteHost();
-            providerPort = logContext.getRemotePort();
-            providerApp = rpcContext.getAttachment("provider");
-            if (StringUtils.isBlank(providerApp)) {
-                providerApp = "";
-            }
-            consumerApp = logContext.getApplication();
-        } else {
-            consumer = logContext.getRemoteHost();
-            consumerPort = logContext.getRemotePort();
-            provider = logContext.getLocalHost();
-            providerPort = logContext.getLocalPort();
-            consumerApp = inv.getAttachment("consumer");
-            if (StringUtils.isBlank(consumerApp)) {
-                consumerApp = "";
-            }
-            providerApp = logContext.getApplication();
-        }
-        String serviceName = invoker.getInterface().getName();
-        String version = invoker.getUrl().getParameter(CommonConstants.VERSION_KEY);
-        String group = invoker.getUrl().getParameter(CommonConstants.GROUP_KEY);
-        logRecord.append("consumer[").append(consumerApp).append(",")
-                .append(consumer).append(':').append(consumerPort)
-                .append("]")
-                .append(" -> ")
-                .append("provider[").append(providerApp).append(",")
-                .append(provider).append(':').append(providerPort)
-                .append("]")
-                .append(" - ");
-        if (null != group && group.length() > 0) {
-            logRecord.append(group).append("/");
-        }
-        logRecord.append(serviceName);
-        if (null != version && version.length() > 0) {
-            logRecord.append(":").append(version);
-        }
-        logRecord.append(" ");
-        logRecord.append(inv.getMethodName());
-        logRecord.append("(");
-        Class<?>[] types = inv.getParameterTypes();
-        if (types != null && types.length > 0) {
-            boolean first = true;
-            for (Class<?> type : types) {
-                if (first) {
-                    first = false;
-                } else {
-                    logRecord.append(",");
-                }
-                logRecord.append(type.getName());
-            }
+    private AsyncLogger shard(InvokerLogMeta.MethodLogMeta methodMeta) {
+        AsyncLogger[] logs = this.logs;
+        if (logs.length == 1) {
+            return logs[0];
         }
-        logRecord.append(") ");
-        //判断是否需要拼接参数
-        if (logContext.filterLevel < FilterLevel.ARGUMENTS.level) {
-            return;
+        int hash = shardByService ? methodMeta.serviceKey.hashCode() : (int) Thread.currentThread().getId();
+        return logs[(hash & Integer.MAX_VALUE) % logs.length];
+    }
+
+    /***
+     * 获取invoker的缓存信息, url变化后重建
+     */
+    InvokerLogMeta invokerMeta(Invoker<?> invoker) {
+        InvokerLogMeta meta = invokerMetas.get(invoker);
+        if (meta != null && meta.isValid(invoker)) {
+            return meta;
         }
-        Object[] args = inv.getArguments();
-        if (args != null && args.length > 0) {
-            logRecord.append(JSON.toJSONString(args));
+        //出现新invoker通常是注册中心推送了变化, 旧的invoker已销毁
+        evictStaleInvokers();
+        if (meta == null && invokerMetas.size() >= MAX_CACHED_INVOKERS) {
+            return sharedMeta(invoker);
         }
+        return invokerMetas.compute(invoker, (k, current) ->
+                current != null && current.isValid(k) ? current : new InvokerLogMeta(k, config));
     }
 
     /***
-     * 拼接调用后日志
-     * @param logRecord log appender
-     * @param result 调用结果
-     * @param ex    ex
-     * @param elapsed   执行时间
+     * 缓存已满时同一服务的invoker共用的缓存信息
      */
-    private void appendAfterInvokeLog(StringBuilder logRecord, LogContext logContext, RpcException ex, Result result, long elapsed) {
-        logRecord.append(",cost:")
-                .append(elapsed).append("ms");
-        if (ex != null) {
-            logRecord.append("FAILED(").append(ex.getMessage()).append(") ");
-            logger.warn("service invoke failed! \n" + logRecord, ex);
-            return;
+    private InvokerLogMeta sharedMeta(Invoker<?> invoker) {
+        String serviceKey = invoker.getUrl().getServiceKey();
+        if (serviceKey == null) {
+            serviceKey = invoker.getInterface().getName();
         }
-        logRecord.append(" DONE ");
-        if (logContext.filterLevel < FilterLevel.RETURNS.level) {
+        InvokerLogMeta meta = sharedMetas.get(serviceKey);
+        return meta != null ? meta : sharedMetas.computeIfAbsent(serviceKey, k -> new InvokerLogMeta(invoker, config));
+    }
+
+    /***
+     * 移除已销毁(不可用)或url已变化的invoker, 至多每秒一次. 有移除时共用缓存也重建, 使动态配置的变化生效
+     */
+    private void evictStaleInvokers() {
+        long now = System.nanoTime();
+        if (now - lastEviction < EVICT_INTERVAL_NANOS) {
             return;
         }
-        logRecord.append("\n Return value(").append(JSON.toJSONString(result.getValue())).append(") ");
+        lastEviction = now;
+        if (invokerMetas.entrySet().removeIf(entry -> !entry.getKey().isAvailable()
+                || !entry.getValue().isValid(entry.getKey()))) {
+            sharedMetas.clear();
+        }
+    }
+
+    int cachedInvokers() {
+        return invokerMetas.size();
+    }
+
+    /***
+     * 拼接参数
+     */
+    private static void appendArguments(StringBuilder logRecord, Object[] args, JsonLogSerializer serializer) {
+        if (args != null && args.length > 0) {
+            serializer.append(logRecord, args);
+        }
+    }
+
+    /***
+     * 参数数组的浅拷贝, 延迟序列化时避免数组元素被替换
+     */
+    private static Object[] snapshot(Object[] args) {
+        return args == null || args.length == 0 ? null : args.clone();
     }
 
     /***
-     * 保存调用日志的上下文
+     * 一次调用的访问日志, 调用线程中只保存字段, 在日志线程中格式化.
+     * 延迟序列化时参数数组是调用结束时的浅拷贝, 参数和返回值对象本身不做拷贝, 调用结束后仍被业务代码修改的对象不适合开启
      */
-    private final class LogContext {
-        private String application;
-        private String localHost;
-        private int localPort;
-        private String remoteHost;
-        private int remotePort;
-        private boolean consumerSide;
-        private Map<String, String> attachments;
-        private int filterLevel;
-
-        public LogContext(Invoker<?> invoker, Invocation invocation) {
-            this.attachments = new HashMap<String, String>();
-            this.filterLevel = invoker.getUrl().getMethodParameter(invocation.getMethodName(), LEVEL_ARG_KEY,
-                    FilterLevel.SIMPLE.level);
-            this.application = invoker.getUrl().getParameter("application");
-            parse();
-        }
-
-        private void parse() {
+    private static final class AccessEvent implements AccessRecord {
+        private final InvokerLogMeta.MethodLogMeta methodMeta;
+        private final JsonLogSerializer serializer;
+        private final String localHost;
+        private final int localPort;
+        private final String remoteHost;
+        private final int remotePort;
+        private final boolean consumerSide;
+        private final boolean withArgs;
+        private final boolean withReturn;
+        /**
+         * 异步调用完成时可能已不在原线程, 调用前取出traceId
+         */
+        private final String traceId;
+        /**
+         * trace filter生成的本次调用的span, 未配置trace filter时为null
+         */
+        private final TraceContext span;
+        /**
+         * 是否被采样, 未配置采样时总是true
+         */
+        private boolean sampled = true;
+        /**
+         * 对端的应用名
+         */
+        private String peerApplication;
+        private long elapsed;
+        private boolean failed;
+        private String failureMessage;
+        private Object[] args;
+        private Object returnValue;
+        /**
+         * 已在调用线程中序列化的参数和返回值
+         */
+        private String argsText;
+        private String returnText;
+
+        AccessEvent(InvokerLogMeta.MethodLogMeta methodMeta, JsonLogSerializer serializer) {
+            this.methodMeta = methodMeta;
+            this.serializer = serializer;
+            this.withArgs = methodMeta.filterLevel >= FilterLevel.ARGUMENTS.level;
+            this.withReturn = methodMeta.filterLevel >= FilterLevel.RETURNS.level;
             RpcContext context = RpcContext.getContext();
             this.localHost = context.getLocalHost();
             this.localPort = context.getLocalPort();
             this.remoteHost = context.getRemoteHost();
             this.remotePort = context.getRemotePort();
             this.consumerSide = context.isConsumerSide();
+            this.traceId = context.getAttachment(ThreadMdcUtil.LOG_TRACE_ID);
+            Object value = context.get(TraceContext.RPC_CONTEXT_KEY);
+            this.span = value instanceof TraceContext ? (TraceContext) value : null;
+        }
+
+        /***
+         * 保存调用结果
+         * @param ex    失败原因, 成功时为null
+         */
+        void complete(Invocation inv, Throwable ex, Result result, long elapsed) {
+            String peer = consumerSide ? RpcContext.getContext().getAttachment("provider") : inv.getAttachment("consumer");
+            this.peerApplication = StringUtils.isBlank(peer) ? "" : peer;
+            this.elapsed = elapsed;
+            if (withArgs) {
+                this.args = inv.getArguments();
+            }
+            if (ex != null) {
+                this.failed = true;
+                this.failureMessage = ex.getMessage();
+                return;
+            }
+            if (withReturn) {
+                this.returnValue = result.getValue();
+            }
+        }
+
+        /***
+         * 在调用线程中把参数和返回值序列化为文本
+         */
+        void serialize() {
+            if (withArgs) {
+                StringBuilder sb = new StringBuilder(128);
+                AccessLogWrapper.appendArguments(sb, args, serializer);
+                argsText = sb.toString();
+                args = null;
+            }
+            if (hasReturnValue()) {
+                StringBuilder sb = new StringBuilder(128);
+                serializer.append(sb, returnValue);
+                returnText = sb.toString();
+                returnValue = null;
+            }
+        }
+
+        @Override
+        public boolean isConsumerSide() {
+            return consumerSide;
         }
 
+        @Override
+        public String getTraceId() {
+            return traceId;
+        }
+
+        @Override
+        public String getSpanId() {
+            return span == null ? null : span.getSpanId();
+        }
+
+        @Override
+        public String getParentSpanId() {
+            return span == null ? null : span.getParentSpanId();
+        }
+
+        @Override
+        public String getMethodPrefix() {
+            return methodMeta.prefix;
+        }
+
+        @Override
         public String getApplication() {
-            return application;
+            return methodMeta.application;
         }
 
+        @Override
+        public String getPeerApplication() {
+            return peerApplication;
+        }
+
+        @Override
         public String getLocalHost() {
             return localHost;
         }
 
+        @Override
         public int getLocalPort() {
             return localPort;
         }
 
+        @Override
         public String getRemoteHost() {
             return remoteHost;
         }
 
+        @Override
         public int getRemotePort() {
             return remotePort;
         }
 
-        public Map<String, String> getAttachments() {
-            return attachments;
+        @Override
+        public long getElapsed() {
+            return elapsed;
         }
 
-        public int getFilterLevel() {
-            return filterLevel;
+        @Override
+        public boolean isFailed() {
+            return failed;
         }
 
-        public boolean isConsumerSide() {
-            return consumerSide;
+        @Override
+        public String getFailureMessage() {
+            return failureMessage;
+        }
+
+        @Override
+        public boolean hasArguments() {
+            return withArgs;
+        }
+
+        @Override
+        public void appendArguments(StringBuilder sb) {
+            if (argsText != null) {
+                sb.append(argsText);
+            } else {
+                AccessLogWrapper.appendArguments(sb, args, serializer);
+            }
+        }
+
+        @Override
+        public boolean hasReturnValue() {
+            return withReturn && !failed;
+        }
+
+        @Override
+        public void appendReturnValue(StringBuilder sb) {
+            if (returnText != null) {
+                sb.append(returnText);
+            } else {
+                serializer.append(sb, returnValue);
+            }
         }
     }
 
     /***
      * 日志过滤级别
      */
-    private enum FilterLevel {
+    enum FilterLevel {
         SIMPLE(5),
         ARGUMENTS(8),
         RETURNS(10);
@@ -0,0 +1,134 @@
+package com.msj.dubbo.spi.extension.filter;
+
+/**
+ * @Description: 一条访问日志的结构化字段. 文本格式由 {@link #render(StringBuilder)} 统一拼接,
+ * 二进制格式直接按字段编码, 从二进制文件读出的记录也实现该接口, 可以还原为相同的文本
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public interface AccessRecord extends LogEvent {
+
+    boolean isConsumerSide();
+
+    String getTraceId();
+
+    /***
+     * 本次调用的spanId, 未配置trace filter时为null
+     */
+    String getSpanId();
+
+    /***
+     * 父spanId, 链路的第一个span或未配置trace filter时为null
+     */
+    String getParentSpanId();
+
+    /***
+     * 服务和方法签名, 如 "group/com.xx.Service:1.0.0 sayHello(java.lang.String) "
+     */
+    String getMethodPrefix();
+
+    /***
+     * 本端应用名
+     */
+    String getApplication();
+
+    /***
+     * 对端应用名, 未知时为空串
+     */
+    String getPeerApplication();
+
+    String getLocalHost();
+
+    int getLocalPort();
+
+    String getRemoteHost();
+
+    int getRemotePort();
+
+    /***
+     * 调用耗时, 毫秒
+     */
+    long getElapsed();
+
+    boolean isFailed();
+
+    String getFailureMessage();
+
+    /***
+     * 是否记录参数
+     */
+    boolean hasArguments();
+
+    /***
+     * 追加参数的JSON, 参数为空时不追加
+     */
+    void appendArguments(StringBuilder sb);
+
+    /***
+     * 是否记录返回值, 失败的调用没有返回值
+     */
+    boolean hasReturnValue();
+
+    /***
+     * 追加返回值的JSON
+     */
+    void appendReturnValue(StringBuilder sb);
+
+    @Override
+    default void render(StringBuilder logRecord) {
+        logRecord.append('[').append(getTraceId()).append(']');
+        String spanId = getSpanId();
+        if (spanId != null) {
+            logRecord.append('[').append(spanId).append(',');
+            String parentSpanId = getParentSpanId();
+            if (parentSpanId != null) {
+                logRecord.append(parentSpanId);
+            }
+            logRecord.append(']');
+        }
+        String consumerApp;
+        String consumer;
+        int consumerPort;
+        String providerApp;
+        String provider;
+        int providerPort;
+        if (isConsumerSide()) {
+            consumerApp = getApplication();
+            consumer = getLocalHost();
+            consumerPort = getLocalPort();
+            providerApp = getPeerApplication();
+            provider = getRemoteHost();
+            providerPort = getRemotePort();
+        } else {
+            consumerApp = getPeerApplication();
+            consumer = getRemoteHost();
+            consumerPort = getRemotePort();
+            providerApp = getApplication();
+            provider = getLocalHost();
+            providerPort = getLocalPort();
+        }
+        logRecord.append("consumer[").append(consumerApp).append(",")
+                .append(consumer).append(':').append(consumerPort)
+                .append("]")
+                .append(" -> ")
+                .append("provider[").append(providerApp).append(",")
+                .append(provider).append(':').append(providerPort)
+                .append("]")
+                .append(" - ");
+        logRecord.append(getMethodPrefix());
+        if (hasArguments()) {
+            appendArguments(logRecord);
+        }
+        logRecord.append(",cost:").append(getElapsed()).append("ms");
+        if (isFailed()) {
+            logRecord.append("FAILED(").append(getFailureMessage()).append(") ");
+            return;
+        }
+        logRecord.append(" DONE ");
+        if (hasReturnValue()) {
+            logRecord.append("\n Return value(");
+            appendReturnValue(logRecord);
+            logRecord.append(") ");
+        }
+    }
+}
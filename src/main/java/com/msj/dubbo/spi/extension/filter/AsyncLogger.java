@@ -1,18 +1,20 @@
 package com.msj.dubbo.spi.extension.filter;
 
 import com.msj.dubbo.spi.extension.util.SleepyTask;
+import com.msj.dubbo.spi.extension.util.WaitStrategy;
 import org.apache.dubbo.common.utils.NamedThreadFactory;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.PrintWriter;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 /**
  * @Description: 异步日志记录器
@@ -26,15 +28,60 @@ public class AsyncLogger extends SleepyTask {
 
     private final String suffix;
 
-    private final ArrayBlockingQueue<Record> queue;
+    private final RecordQueue queue;
 
     private final RollingPattern rollingPattern;
 
-    private static final SimpleDateFormat CONTENT_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    /**
+     * 按时间flush的输出共用的定时唤醒线程
+     */
+    private static final ScheduledExecutorService FLUSH_TIMER = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("dubbo-asyncLogger-flush", true));
 
     private volatile String fileName = "";
 
-    private PrintWriter writer;
+    private final LogWriter writer;
+
+    private boolean opened;
+
+    private final ScheduledFuture<?> flushTask;
+
+    private final RolledFileArchiver archiver;
+
+    private final Consumer<Record> printer = this::log;
+
+    /**
+     * 渲染LogEvent的缓冲, 仅日志线程使用
+     */
+    private StringBuilder renderBuffer = new StringBuilder(1024);
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final long blockTimeoutNanos;
+
+    private final OverflowSpill spill;
+
+    private final OverflowCounters overflowCounters = new OverflowCounters();
+
+    /**
+     * 关闭后仍留在队列中的记录只计数
+     */
+    private final Consumer<Record> discarder = rec -> overflowCounters.droppedAfterClose.increment();
+
+    /**
+     * 上次写入日志文件的丢失总数, 仅日志线程访问
+     */
+    private long reportedLost;
+
+    /**
+     * shutdown之后的日志不再进入队列, 计入droppedAfterClose
+     */
+    private volatile boolean closed;
+
+    /**
+     * shutdown的最后一次flush已完成, 之后入队的记录不再写入; 只在synchronized中访问
+     */
+    private boolean terminated;
 
     public AsyncLogger(String prefix, String suffix) {
         this(prefix, suffix, 10000);
@@ -49,11 +96,55 @@ public class AsyncLogger extends SleepyTask {
     }
 
     public AsyncLogger(String prefix, String suffix, int queueSize, RollingPattern pattern) {
+        this(prefix, suffix, pattern, new BlockingRecordQueue(queueSize));
+    }
+
+    public AsyncLogger(String prefix, String suffix, AccessLogConfig config) {
+        super(new NamedThreadFactory("dubbo-asyncLogger-" + prefix, true),
+                WaitStrategy.parse(config.getWaitStrategy(), config.getWaitParkMicros()));
+        this.directory = prefix;
+        this.suffix = suffix;
+        this.queue = RecordQueue.newQueue(config.getQueueType(), config.getQueueSize());
+        this.rollingPattern = newRollingPattern(config);
+        this.rollingPattern.bind(prefix, suffix);
+        this.overflowPolicy = config.getOverflowPolicy();
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getBlockTimeoutMillis());
+        this.spill = overflowPolicy == OverflowPolicy.SPILL
+                ? new OverflowSpill(new File(prefix + "overflow" + suffix), config.getSpillMaxBytes(),
+                overflowCounters, FLUSH_TIMER, config.getFlushIntervalMillis()) : null;
+        this.writer = LogWriter.newWriter(config.getWriterType(), config);
+        this.flushTask = writer instanceof ChannelLogWriter ? FLUSH_TIMER.scheduleWithFixedDelay(this::weakUp,
+                config.getFlushIntervalMillis(), config.getFlushIntervalMillis(), TimeUnit.MILLISECONDS) : null;
+        RolledFileArchiver archiver = new RolledFileArchiver(prefix, config.isCompress(), config.getMaxFiles(),
+                config.getMaxTotalBytes(), config.isTraceIndex());
+        this.archiver = archiver.isEnabled() ? archiver : null;
+    }
+
+    private static RollingPattern newRollingPattern(AccessLogConfig config) {
+        String type = config.getRollingType();
+        if (AccessLogConfig.ROLLING_SIZE.equalsIgnoreCase(type)) {
+            return new SizeBasedRollingPattern(null, config.getMaxFileSize());
+        }
+        TimeBasedRollingPattern timePattern = new TimeBasedRollingPattern(config.getDatePattern());
+        if (AccessLogConfig.ROLLING_TIME_SIZE.equalsIgnoreCase(type)) {
+            return new SizeBasedRollingPattern(timePattern, config.getMaxFileSize());
+        }
+        return timePattern;
+    }
+
+    public AsyncLogger(String prefix, String suffix, RollingPattern pattern, RecordQueue queue) {
         super(Executors.newSingleThreadExecutor(new NamedThreadFactory("dubbo-asyncLogger-" + prefix, true)));
         this.directory = prefix;
         this.suffix = suffix;
-        this.queue = new ArrayBlockingQueue<Record>(queueSize);
+        this.queue = queue;
         this.rollingPattern = pattern;
+        this.rollingPattern.bind(prefix, suffix);
+        this.overflowPolicy = OverflowPolicy.DROP_NEWEST;
+        this.blockTimeoutNanos = 0;
+        this.spill = null;
+        this.writer = new StreamLogWriter();
+        this.flushTask = null;
+        this.archiver = null;
     }
 
     /***
@@ -63,7 +154,8 @@ public class AsyncLogger extends SleepyTask {
         try {
             File path = new File(directory + fileName + suffix);
             path.getParentFile().mkdirs();
-            writer = new PrintWriter(new BufferedWriter(new FileWriter(path, true), 128000), false);
+            writer.open(path);
+            opened = true;
         } catch (Throwable t) {
             t.printStackTrace();
         }
@@ -85,11 +177,98 @@ public class AsyncLogger extends SleepyTask {
      * @return boolean
      */
     public boolean log(String message) {
-        boolean re = queue.offer(new Record(System.currentTimeMillis(), message));
+        return log(message, null);
+    }
+
+    /***
+     * 记录延迟渲染的日志, 在日志线程中调用event.render
+     * @param event event
+     * @return boolean
+     */
+    public boolean log(LogEvent event) {
+        return log(null, event);
+    }
+
+    private boolean log(String message, LogEvent event) {
+        if (closed) {
+            overflowCounters.droppedAfterClose.increment();
+            return false;
+        }
+        long time = System.currentTimeMillis();
+        boolean queued = queue.offer(time, message, event);
+        boolean re = queued || overflow(time, message, event);
+        if (closed) {
+            //入队时与shutdown并发: 最后一次flush之前入队的由它写入, 之后入队的在这里计数
+            return re && !((queued || overflowPolicy != OverflowPolicy.SPILL) && discardAfterClose());
+        }
         weakUp();
         return re;
     }
 
+    /***
+     * 最后一次flush之后队列中剩余的记录计入droppedAfterClose
+     * @return 最后一次flush是否已完成, 为false时调用方的记录会由它写入
+     */
+    private synchronized boolean discardAfterClose() {
+        if (!terminated) {
+            return false;
+        }
+        queue.drain(discarder);
+        return true;
+    }
+
+    /***
+     * 队列已满, 按策略处理
+     * @return 记录是否进入队列或溢出文件
+     */
+    private boolean overflow(long time, String message, LogEvent event) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                //并发下可能刚腾出的位置被其他线程占用, 有限次重试
+                for (int i = 0; i < 3; i++) {
+                    if (queue.discardOldest()) {
+                        overflowCounters.droppedOldest.increment();
+                    }
+                    if (queue.offer(time, message, event)) {
+                        return true;
+                    }
+                }
+                overflowCounters.droppedNewest.increment();
+                return false;
+            case BLOCK:
+                overflowCounters.blocked.increment();
+                long deadline = System.nanoTime() + blockTimeoutNanos;
+                do {
+                    if (closed) {
+                        //日志线程已停止, 不再等待
+                        overflowCounters.droppedAfterClose.increment();
+                        return false;
+                    }
+                    weakUp();
+                    LockSupport.parkNanos(50_000L);
+                    if (queue.offer(time, message, event)) {
+                        return true;
+                    }
+                } while (System.nanoTime() - deadline < 0);
+                overflowCounters.blockTimeouts.increment();
+                return false;
+            case SPILL:
+                //溢出文件自行计入spilled和spillFailures
+                return spill.append(time, event == null ? message : render(event, new StringBuilder()).toString());
+            default:
+                overflowCounters.droppedNewest.increment();
+                return false;
+        }
+    }
+
+    /***
+     * 队列溢出计数
+     * @return OverflowCounters
+     */
+    public OverflowCounters getOverflowCounters() {
+        return overflowCounters;
+    }
+
     @Override
     protected void runTask() {
         flush();
@@ -99,12 +278,41 @@ public class AsyncLogger extends SleepyTask {
      * flush log of Memory to file
      */
     public synchronized void flush() {
-        Record rec;
-        while ((rec = queue.poll()) != null) {
-            log(rec);
+        flush(false);
+    }
+
+    private synchronized void flush(boolean force) {
+        if (terminated) {
+            //shutdown之后仍在执行的日志线程不再重新打开文件
+            queue.drain(discarder);
+            return;
+        }
+        queue.drain(printer);
+        reportOverflow();
+        if (opened) {
+            try {
+                writer.flush(force);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /***
+     * 有新的丢失时把累计计数写入日志文件, 便于排查日志缺失
+     */
+    private void reportOverflow() {
+        long lost = overflowCounters.getLost();
+        if (lost == reportedLost || !opened) {
+            return;
+        }
+        reportedLost = lost;
+        try {
+            writer.write(System.currentTimeMillis(), "[asyncLogger] queue overflow, policy="
+                    + overflowPolicy + ",capacity=" + queue.capacity() + "," + overflowCounters);
+        } catch (Exception e) {
+            e.printStackTrace();
         }
-        if (writer != null)
-            writer.flush();
     }
 
     /***
@@ -113,25 +321,51 @@ public class AsyncLogger extends SleepyTask {
      */
     private void log(Record rec) { //单线程中执行, 无需考虑并行问题.
         roll(rec);
+        if (!opened) {
+            return;
+        }
         try {
-            Date now = new Date(rec.time);
-            writer.println(CONTENT_DATE_FORMAT.format(now) + ": " + rec.message);
+            if (rec.event instanceof AccessRecord && writer instanceof BinaryLogWriter) {
+                ((BinaryLogWriter) writer).write(rec.time, (AccessRecord) rec.event);
+            } else if (rec.event != null) {
+                renderBuffer.setLength(0);
+                writer.write(rec.time, render(rec.event, renderBuffer));
+                if (renderBuffer.capacity() > 1024 * 1024) {
+                    //偶尔的超大记录不长期占用内存
+                    renderBuffer = new StringBuilder(1024);
+                }
+            } else {
+                writer.write(rec.time, rec.message);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
 
     }
 
+    private static StringBuilder render(LogEvent event, StringBuilder sb) {
+        try {
+            event.render(sb);
+        } catch (RuntimeException e) {
+            sb.append("<render failed: ").append(e).append('>');
+        }
+        return sb;
+    }
+
     /***
      * roll log
      * @param rec   record
      */
     private void roll(Record rec) {
-        String fileName = rollingPattern.fileName(rec);
+        String fileName = rollingPattern.fileName(rec, opened ? writer.length() : 0L);
         if (!fileName.equals(this.fileName)) {
+            String rolled = this.fileName;
             close();
             this.fileName = fileName;
             open();
+            if (archiver != null && !rolled.isEmpty()) {
+                archiver.archive(directory + rolled, suffix, directory + fileName + suffix);
+            }
         }
     }
 
@@ -139,12 +373,13 @@ public class AsyncLogger extends SleepyTask {
      * close file handle
      */
     private void close() {
-        if (writer != null) {
+        if (opened) {
             try {
                 writer.close();
             } catch (Throwable e) {
                 e.printStackTrace();
             }
+            opened = false;
         }
         fileName = "";
     }
@@ -153,21 +388,37 @@ public class AsyncLogger extends SleepyTask {
      * 关闭
      */
     public void shutdown() {
-        ((ExecutorService) executor).shutdown();
-        flush();
-        close();
+        closed = true;
+        stop();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        synchronized (this) {
+            flush(true);
+            close();
+            terminated = true;
+        }
+        if (spill != null) {
+            spill.close();
+        }
     }
 
     /**
-     * 日志
+     * 日志, 使用环形队列时槽位中的Record会被复用, 不要在消费回调之外持有
      */
     public static final class Record {
-        public final long time;
-        public final String message;
+        public long time;
+        public String message;
+        public LogEvent event;
 
         public Record(long time, String message) {
+            this(time, message, null);
+        }
+
+        public Record(long time, String message, LogEvent event) {
             this.time = time;
             this.message = message;
+            this.event = event;
         }
     }
 
@@ -176,21 +427,239 @@ public class AsyncLogger extends SleepyTask {
      */
     public static interface RollingPattern {
         String fileName(Record record);
+
+        /***
+         * 需要按大小滚动的实现覆盖此方法
+         * @param record    record
+         * @param fileLength    当前文件已写入字节数
+         * @return 文件名
+         */
+        default String fileName(Record record, long fileLength) {
+            return fileName(record);
+        }
+
+        /***
+         * AsyncLogger创建时回调, 告知文件前缀和后缀
+         */
+        default void bind(String prefix, String suffix) {
+        }
     }
 
     /**
-     * 基于时间的日志滚动
+     * 基于时间的日志滚动, 缓存当前周期的结束时间, 周期内只做long比较
      */
     public static class TimeBasedRollingPattern implements RollingPattern {
         private final SimpleDateFormat format;
 
+        /**
+         * pattern中最小的时间单位, 对应Calendar字段
+         */
+        private final int unit;
+
+        private long nextBoundary = Long.MIN_VALUE;
+
+        private String current;
+
         public TimeBasedRollingPattern(String pattern) {
             this.format = new SimpleDateFormat(pattern);
+            this.unit = smallestUnit(pattern);
+        }
+
+        @Override
+        public String fileName(Record record) {
+            long time = record.time;
+            //多线程入队时记录时间不是严格递增的, 跨过边界后迟到的记录写入当前文件, 不再回到已滚动的文件
+            if (time < nextBoundary && current != null) {
+                return current;
+            }
+            current = format.format(new Date(time));
+            computePeriod(time);
+            return current;
+        }
+
+        private void computePeriod(long time) {
+            if (unit == Calendar.MILLISECOND) {
+                nextBoundary = time + 1;
+                return;
+            }
+            Calendar cal = Calendar.getInstance(format.getTimeZone());
+            cal.setTimeInMillis(time);
+            cal.set(Calendar.MILLISECOND, 0);
+            if (unit != Calendar.SECOND) {
+                cal.set(Calendar.SECOND, 0);
+                if (unit != Calendar.MINUTE) {
+                    cal.set(Calendar.MINUTE, 0);
+                    if (unit != Calendar.HOUR_OF_DAY) {
+                        cal.set(Calendar.HOUR_OF_DAY, 0);
+                        if (unit == Calendar.WEEK_OF_YEAR) {
+                            cal.set(Calendar.DAY_OF_WEEK, cal.getFirstDayOfWeek());
+                        } else if (unit == Calendar.MONTH) {
+                            cal.set(Calendar.DAY_OF_MONTH, 1);
+                        } else if (unit == Calendar.YEAR) {
+                            cal.set(Calendar.DAY_OF_YEAR, 1);
+                        }
+                    }
+                }
+            }
+            cal.add(unit, 1);
+            nextBoundary = cal.getTimeInMillis();
+        }
+
+        /***
+         * 解析pattern中最小的时间单位, 忽略引号中的文字
+         */
+        private static int smallestUnit(String pattern) {
+            int unit = Calendar.YEAR;
+            boolean quoted = false;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\'') {
+                    quoted = !quoted;
+                    continue;
+                }
+                if (quoted) {
+                    continue;
+                }
+                int u;
+                switch (c) {
+                    case 'S':
+                        return Calendar.MILLISECOND;
+                    case 's':
+                        u = Calendar.SECOND;
+                        break;
+                    case 'm':
+                        u = Calendar.MINUTE;
+                        break;
+                    case 'H':
+                    case 'k':
+                    case 'K':
+                    case 'h':
+                    case 'a':
+                        u = Calendar.HOUR_OF_DAY;
+                        break;
+                    case 'd':
+                    case 'D':
+                    case 'E':
+                    case 'u':
+                    case 'F':
+                        u = Calendar.DAY_OF_MONTH;
+                        break;
+                    case 'w':
+                    case 'W':
+                        u = Calendar.WEEK_OF_YEAR;
+                        break;
+                    case 'M':
+                        u = Calendar.MONTH;
+                        break;
+                    default:
+                        continue;
+                }
+                if (rank(u) < rank(unit)) {
+                    unit = u;
+                }
+            }
+            return unit;
+        }
+
+        private static int rank(int unit) {
+            switch (unit) {
+                case Calendar.SECOND:
+                    return 1;
+                case Calendar.MINUTE:
+                    return 2;
+                case Calendar.HOUR_OF_DAY:
+                    return 3;
+                case Calendar.DAY_OF_MONTH:
+                    return 4;
+                case Calendar.WEEK_OF_YEAR:
+                    return 5;
+                case Calendar.MONTH:
+                    return 6;
+                default:
+                    return 7;
+            }
+        }
+    }
+
+    /**
+     * 基于大小的日志滚动, 文件名为序号; 指定时间滚动时为 时间.序号, 每个时间周期序号从0开始
+     */
+    public static class SizeBasedRollingPattern implements RollingPattern {
+        private final RollingPattern timePattern;
+
+        private final long maxBytes;
+
+        private String prefix = "";
+
+        private String suffix = "";
+
+        private String period;
+
+        private int index;
+
+        private String current;
+
+        /***
+         * @param timePattern   时间滚动, 为null时只按大小滚动
+         * @param maxBytes  单个文件最大字节数
+         */
+        public SizeBasedRollingPattern(RollingPattern timePattern, long maxBytes) {
+            this.timePattern = timePattern;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void bind(String prefix, String suffix) {
+            this.prefix = prefix;
+            this.suffix = suffix;
         }
 
         @Override
         public String fileName(Record record) {
-            return format.format(new Date(record.time));
+            return fileName(record, 0L);
+        }
+
+        @Override
+        public String fileName(Record record, long fileLength) {
+            String period = timePattern == null ? "" : timePattern.fileName(record);
+            if (!period.equals(this.period)) {
+                this.period = period;
+                this.index = lastIndex(period);
+                this.current = name(period, index);
+            } else if (fileLength >= maxBytes) {
+                index++;
+                current = name(period, index);
+            }
+            return current;
+        }
+
+        private static String name(String period, int index) {
+            return period.isEmpty() ? String.valueOf(index) : period + "." + index;
+        }
+
+        /***
+         * 重启后接着已有的最大序号写
+         */
+        private int lastIndex(String period) {
+            File probe = new File(prefix + name(period, 0) + suffix);
+            File dir = probe.getParentFile();
+            String head = probe.getName().substring(0, probe.getName().length() - ("0" + suffix).length());
+            String[] names = dir == null ? null : dir.list();
+            int max = 0;
+            if (names != null) {
+                for (String name : names) {
+                    if (!name.startsWith(head) || !name.endsWith(suffix)) {
+                        continue;
+                    }
+                    String middle = name.substring(head.length(), name.length() - suffix.length());
+                    try {
+                        max = Math.max(max, Integer.parseInt(middle));
+                    } catch (NumberFormatException ignore) {
+                        //非本pattern生成的文件
+                    }
+                }
+            }
+            return max;
         }
     }
 }
@@ -0,0 +1,92 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.msj.dubbo.spi.extension.util.CachedTimestamp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @Description: 把二进制访问日志转换为文本格式(与accesslogwriter=stream的输出相同)或JSON lines, 输出到标准输出.
+ * 用法: java -cp ... com.msj.dubbo.spi.extension.filter.BinaryLogConverter [--json] file...
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class BinaryLogConverter {
+
+    private final boolean json;
+
+    private final CachedTimestamp timestamp;
+
+    private final CachedTimestamp millisTimestamp;
+
+    /***
+     * @param json  是否输出JSON lines, 否则输出文本格式
+     */
+    public BinaryLogConverter(boolean json) {
+        this.json = json;
+        this.timestamp = new CachedTimestamp(false);
+        this.millisTimestamp = new CachedTimestamp(true);
+    }
+
+    /***
+     * 转换一个文件
+     * @param file  二进制日志, 可以是gzip压缩后的.gz文件
+     * @param out   输出
+     * @return 转换的记录数
+     */
+    public long convert(File file, Writer out) throws IOException {
+        long count = 0;
+        try (BinaryLogReader reader = BinaryLogReader.open(file)) {
+            StringBuilder sb = new StringBuilder(512);
+            BinaryLogRecord record;
+            while ((record = reader.next()) != null) {
+                sb.setLength(0);
+                if (json) {
+                    sb.append(record.toJson().toJSONString());
+                } else {
+                    (reader.isMillis() ? millisTimestamp : timestamp).appendTo(record.getTime(), sb);
+                    sb.append(": ");
+                    if (record.isAccess()) {
+                        record.render(sb);
+                    } else {
+                        sb.append(record.getText());
+                    }
+                }
+                sb.append('\n');
+                out.append(sb);
+                count++;
+            }
+            if (reader.getCorruptedFrames() > 0 || reader.getSkippedBytes() > 0) {
+                System.err.println(file + ": skipped " + reader.getCorruptedFrames() + " corrupted frames, "
+                        + reader.getSkippedBytes() + " bytes");
+            }
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean json = false;
+        int first = 0;
+        if (args.length > 0 && ("--json".equals(args[0]) || "-j".equals(args[0]))) {
+            json = true;
+            first = 1;
+        }
+        if (args.length == first) {
+            System.err.println("usage: BinaryLogConverter [--json] file...");
+            System.exit(1);
+        }
+        BinaryLogConverter converter = new BinaryLogConverter(json);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024);
+        try {
+            for (int i = first; i < args.length; i++) {
+                converter.convert(new File(args[i]), out);
+            }
+        } finally {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.msj.dubbo.spi.extension.util.Utf8;
+
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @Description: 二进制访问日志的格式定义.
+ * 文件由帧组成: 类型(1字节) + 内容长度(varint) + 内容 + CRC32(4字节, 覆盖类型和内容).
+ * 每个文件以RESET帧开头, 之后的服务方法、应用名、主机等字符串第一次出现时写一个DICT帧, 记录中只写编号;
+ * 追加写已有文件、字典过大或段超过SEGMENT_BYTES时再写RESET帧清空字典. RESET帧的内容固定, 读取遇到损坏的帧时可以向后查找它重新同步
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+final class BinaryLogFormat {
+
+    static final byte[] MAGIC = {'D', 'A', 'L', 'B'};
+
+    static final int VERSION = 1;
+
+    /**
+     * 清空字典和时间基准, 内容为 MAGIC + 版本 + 选项
+     */
+    static final int FRAME_RESET = 0;
+
+    /**
+     * 字典项, 内容为 编号(varint) + UTF-8字符串
+     */
+    static final int FRAME_DICT = 1;
+
+    /**
+     * 访问日志记录
+     */
+    static final int FRAME_ACCESS = 2;
+
+    /**
+     * 普通文本记录(溢出统计等), 内容为 时间差(zigzag varint) + UTF-8文本
+     */
+    static final int FRAME_TEXT = 3;
+
+    /**
+     * RESET帧内容长度: MAGIC(4) + 版本(1) + 选项(1)
+     */
+    static final int RESET_LENGTH = 6;
+
+    /**
+     * RESET帧的开头: 类型、长度和MAGIC, 用于损坏后重新同步
+     */
+    static final byte[] RESET_SIGNATURE = {FRAME_RESET, RESET_LENGTH, 'D', 'A', 'L', 'B'};
+
+    /**
+     * RESET帧选项: 转换为文本时输出毫秒
+     */
+    static final int OPTION_MILLIS = 1;
+
+    /**
+     * 单帧最大长度, 超过时认为文件已损坏
+     */
+    static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * 一个字典段中最多的字符串数, 超过后写RESET帧重新开始
+     */
+    static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    /**
+     * 字典段写满该字节数后开始新段, 损坏时最多丢失一段, 每段开头也是可以单独读取的位置
+     */
+    static final int SEGMENT_BYTES = 1024 * 1024;
+
+    //ACCESS帧的标记位
+    static final int FLAG_CONSUMER = 1;
+    static final int FLAG_FAILED = 1 << 1;
+    static final int FLAG_SPAN = 1 << 2;
+    static final int FLAG_PARENT = 1 << 3;
+    static final int FLAG_ARGUMENTS = 1 << 4;
+    static final int FLAG_RETURN = 1 << 5;
+    /**
+     * traceId是32位小写十六进制, 按16字节写入
+     */
+    static final int FLAG_HEX_TRACE = 1 << 6;
+    /**
+     * spanId和父spanId都是16位小写十六进制, 各按8字节写入
+     */
+    static final int FLAG_HEX_SPAN = 1 << 7;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private BinaryLogFormat() {
+    }
+
+    /***
+     * 是否为指定长度的小写十六进制
+     */
+    static boolean isHex(String s, int length) {
+        if (s == null || s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 帧内容的编码缓冲, 可复用
+     */
+    static final class Encoder {
+        private byte[] buf = new byte[512];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        /***
+         * 偶尔的超大记录之后缩回, 不长期占用内存
+         */
+        void trim() {
+            if (buf.length > 1024 * 1024) {
+                buf = new byte[512];
+            }
+        }
+
+        private void ensure(int n) {
+            if (size + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+
+        void writeZigZag(long v) {
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+
+        /***
+         * UTF-8字节数加1后写varint, 0表示null; 字符直接编码到缓冲中, 不经过String和byte[]
+         */
+        void writeString(CharSequence s) {
+            if (s == null) {
+                writeVarLong(0);
+                return;
+            }
+            int length = Utf8.encodedLength(s);
+            writeVarLong(length + 1L);
+            writeUtf8(s, length);
+        }
+
+        /***
+         * 写入不带长度的UTF-8, 用于帧内容的最后一个字段
+         */
+        void writeTail(CharSequence s) {
+            writeUtf8(s, Utf8.encodedLength(s));
+        }
+
+        private void writeUtf8(CharSequence s, int length) {
+            ensure(length);
+            size = Utf8.encode(s, buf, size);
+        }
+
+        /***
+         * 十六进制字符串按字节写入, 调用前已用isHex检查
+         */
+        void writeHex(String hex) {
+            ensure(hex.length() / 2);
+            for (int i = 0; i < hex.length(); i += 2) {
+                buf[size++] = (byte) ((Character.digit(hex.charAt(i), 16) << 4) | Character.digit(hex.charAt(i + 1), 16));
+            }
+        }
+    }
+
+    /**
+     * 帧内容的解码
+     */
+    static final class Decoder {
+        private byte[] buf;
+        private int pos;
+        private int limit;
+
+        void reset(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.limit = offset + length;
+        }
+
+        int readByte() throws EOFException {
+            if (pos >= limit) {
+                throw new EOFException("frame too short");
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        long readVarLong() throws EOFException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new EOFException("malformed varint");
+        }
+
+        int readVarInt() throws EOFException {
+            return (int) readVarLong();
+        }
+
+        long readZigZag() throws EOFException {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String readString() throws EOFException {
+            long length = readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            return readUtf8((int) (length - 1));
+        }
+
+        String readTail() throws EOFException {
+            return readUtf8(limit - pos);
+        }
+
+        private String readUtf8(int length) throws EOFException {
+            if (length < 0 || length > limit - pos) {
+                throw new EOFException("string exceeds frame");
+            }
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        String readHex(int bytes) throws EOFException {
+            if (bytes > limit - pos) {
+                throw new EOFException("frame too short");
+            }
+            char[] chars = new char[bytes * 2];
+            for (int i = 0; i < bytes; i++) {
+                int b = buf[pos++] & 0xFF;
+                chars[i * 2] = HEX[b >>> 4];
+                chars[i * 2 + 1] = HEX[b & 0xF];
+            }
+            return new String(chars);
+        }
+    }
+}
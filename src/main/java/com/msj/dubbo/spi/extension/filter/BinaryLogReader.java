@@ -0,0 +1,363 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+import static com.msj.dubbo.spi.extension.filter.BinaryLogFormat.*;
+
+/**
+ * @Description: 流式读取 {@link BinaryLogWriter} 写出的二进制日志, 每次返回一条记录, 内存占用只和单帧大小有关.
+ * CRC校验失败的帧跳过并向后查找下一个RESET帧, 文件开头的RESET帧损坏时同样处理; 文件末尾写了一半的帧(进程退出时未写完)忽略
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class BinaryLogReader implements Closeable {
+
+    private static final int EOF = -1;
+
+    private static final int TRUNCATED = -2;
+
+    private static final int CORRUPTED = -3;
+
+    private final InputStream in;
+
+    private final CRC32 crc = new CRC32();
+
+    private final Decoder decoder = new Decoder();
+
+    private final List<String> dictionary = new ArrayList<String>();
+
+    private byte[] buf = new byte[64 * 1024];
+
+    private int pos;
+
+    private int limit;
+
+    /**
+     * buf[0]在流中的位置
+     */
+    private long bufOffset;
+
+    /**
+     * readFrame读到的整帧长度和内容位置
+     */
+    private int frameLength;
+
+    private int payloadOffset;
+
+    private int payloadLength;
+
+    private boolean started;
+
+    /**
+     * 最近一个RESET帧的位置
+     */
+    private long segmentPosition;
+
+    private boolean millis;
+
+    private long lastTime;
+
+    private long corruptedFrames;
+
+    private long skippedBytes;
+
+    public BinaryLogReader(InputStream in) {
+        this.in = in;
+    }
+
+    /***
+     * 打开日志文件, .gz结尾的文件边读边解压
+     */
+    public static BinaryLogReader open(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(RolledFileArchiver.GZIP_SUFFIX)) {
+            try {
+                in = new GZIPInputStream(in, 64 * 1024);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+        return new BinaryLogReader(in);
+    }
+
+    /***
+     * 读取下一条记录
+     * @return 记录, 读完时返回null
+     * @throws IOException 读取失败, 或不是二进制访问日志: 开头是校验正确的非RESET帧, 或整个文件中找不到RESET帧
+     */
+    public BinaryLogRecord next() throws IOException {
+        while (true) {
+            int type = readFrame();
+            if (!started && type >= 0 && type != FRAME_RESET) {
+                throw new IOException("not a binary access log");
+            }
+            if (type == EOF) {
+                if (!started && skippedBytes > 0) {
+                    throw new IOException("not a binary access log: no RESET frame found");
+                }
+                return null;
+            }
+            if (type == CORRUPTED || type == TRUNCATED) {
+                //文件末尾未写完的帧之后可能是重启后追加的RESET帧; 开头的RESET帧损坏时从下一个字典段开始读
+                if (type == CORRUPTED) {
+                    corruptedFrames++;
+                }
+                skip(1);
+                resync();
+                continue;
+            }
+            BinaryLogRecord record = null;
+            try {
+                decoder.reset(buf, payloadOffset, payloadLength);
+                record = decode(type);
+            } catch (EOFException | IndexOutOfBoundsException e) {
+                //CRC正确但内容无法解析, 如引用了损坏部分中的字典项, 只跳过这一帧
+                corruptedFrames++;
+            }
+            pos += frameLength;
+            if (record != null) {
+                return record;
+            }
+        }
+    }
+
+    private BinaryLogRecord decode(int type) throws IOException {
+        switch (type) {
+            case FRAME_RESET:
+                for (byte b : MAGIC) {
+                    if (decoder.readByte() != b) {
+                        throw new IOException("not a binary access log");
+                    }
+                }
+                int version = decoder.readByte();
+                if (version > VERSION) {
+                    throw new IOException("unsupported binary access log version: " + version);
+                }
+                millis = (decoder.readByte() & OPTION_MILLIS) != 0;
+                segmentPosition = getPosition();
+                dictionary.clear();
+                lastTime = 0;
+                started = true;
+                return null;
+            case FRAME_DICT:
+                int id = decoder.readVarInt();
+                String value = decoder.readTail();
+                while (dictionary.size() < id) {
+                    dictionary.add(null);
+                }
+                if (id == dictionary.size()) {
+                    dictionary.add(value);
+                } else {
+                    dictionary.set(id, value);
+                }
+                return null;
+            case FRAME_TEXT:
+                BinaryLogRecord text = new BinaryLogRecord();
+                lastTime += decoder.readZigZag();
+                text.time = lastTime;
+                text.text = decoder.readTail();
+                return text;
+            default:
+                return decodeAccess();
+        }
+    }
+
+    private BinaryLogRecord decodeAccess() throws EOFException {
+        BinaryLogRecord record = new BinaryLogRecord();
+        long time = lastTime + decoder.readZigZag();
+        int flags = decoder.readByte();
+        record.consumerSide = (flags & FLAG_CONSUMER) != 0;
+        record.failed = (flags & FLAG_FAILED) != 0;
+        record.traceId = (flags & FLAG_HEX_TRACE) != 0 ? decoder.readHex(16) : decoder.readString();
+        if ((flags & FLAG_SPAN) != 0) {
+            boolean hex = (flags & FLAG_HEX_SPAN) != 0;
+            record.spanId = hex ? decoder.readHex(8) : decoder.readString();
+            if ((flags & FLAG_PARENT) != 0) {
+                record.parentSpanId = hex ? decoder.readHex(8) : decoder.readString();
+            }
+        }
+        record.methodPrefix = lookup(decoder.readVarInt());
+        record.application = lookup(decoder.readVarInt());
+        record.peerApplication = lookup(decoder.readVarInt());
+        record.localHost = lookup(decoder.readVarInt());
+        record.localPort = decoder.readVarInt();
+        record.remoteHost = lookup(decoder.readVarInt());
+        record.remotePort = decoder.readVarInt();
+        record.elapsed = decoder.readVarLong();
+        if (record.failed) {
+            record.failureMessage = decoder.readString();
+        }
+        if ((flags & FLAG_ARGUMENTS) != 0) {
+            record.arguments = decoder.readString();
+        }
+        if ((flags & FLAG_RETURN) != 0) {
+            record.returnValue = decoder.readString();
+        }
+        lastTime = time;
+        record.time = time;
+        return record;
+    }
+
+    private String lookup(int id) {
+        if (id == 0) {
+            return null;
+        }
+        String value = dictionary.get(id - 1);
+        if (value == null) {
+            throw new IndexOutOfBoundsException("missing dictionary entry " + (id - 1));
+        }
+        return value;
+    }
+
+    /***
+     * 读取pos处的一帧, 成功时frameLength为整帧长度
+     * @return 帧类型, 或 EOF/TRUNCATED/CORRUPTED
+     */
+    private int readFrame() throws IOException {
+        if (!fill(1)) {
+            return EOF;
+        }
+        int type = buf[pos] & 0xFF;
+        if (type > FRAME_TEXT) {
+            return CORRUPTED;
+        }
+        long length = 0;
+        int header = 1;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 28) {
+                return CORRUPTED;
+            }
+            if (!fill(header + 1)) {
+                return TRUNCATED;
+            }
+            int b = buf[pos + header++] & 0xFF;
+            length |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length > MAX_FRAME_LENGTH) {
+            return CORRUPTED;
+        }
+        int total = header + (int) length + 4;
+        if (!fill(total)) {
+            return TRUNCATED;
+        }
+        crc.reset();
+        crc.update(type);
+        crc.update(buf, pos + header, (int) length);
+        int end = pos + total;
+        int stored = ((buf[end - 4] & 0xFF) << 24) | ((buf[end - 3] & 0xFF) << 16)
+                | ((buf[end - 2] & 0xFF) << 8) | (buf[end - 1] & 0xFF);
+        if ((int) crc.getValue() != stored) {
+            return CORRUPTED;
+        }
+        frameLength = total;
+        payloadOffset = pos + header;
+        payloadLength = (int) length;
+        return type;
+    }
+
+    /***
+     * 从pos开始向后查找RESET帧
+     */
+    private void resync() throws IOException {
+        while (fill(RESET_SIGNATURE.length)) {
+            boolean match = true;
+            for (int i = 0; i < RESET_SIGNATURE.length; i++) {
+                if (buf[pos + i] != RESET_SIGNATURE[i]) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return;
+            }
+            skip(1);
+        }
+        skip(limit - pos);
+    }
+
+    private void skip(int n) {
+        pos += n;
+        skippedBytes += n;
+    }
+
+    /***
+     * 保证pos之后至少有n个字节
+     * @return 流已结束且不足n个字节时返回false
+     */
+    private boolean fill(int n) throws IOException {
+        if (limit - pos >= n) {
+            return true;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            bufOffset += pos;
+            pos = 0;
+        }
+        if (n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(n, buf.length * 2));
+        }
+        while (limit < n) {
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    /***
+     * 下一帧在(解压后的)流中的位置
+     */
+    public long getPosition() {
+        return bufOffset + pos;
+    }
+
+    /***
+     * 最近一个RESET帧(当前字典段的开头)在流中的位置, 从这里开始的数据可以单独读取
+     */
+    public long getSegmentPosition() {
+        return segmentPosition;
+    }
+
+    /***
+     * 最近一个RESET帧中的选项: 转换为文本时是否输出毫秒
+     */
+    public boolean isMillis() {
+        return millis;
+    }
+
+    /***
+     * 校验失败或无法解析而跳过的帧数
+     */
+    public long getCorruptedFrames() {
+        return corruptedFrames;
+    }
+
+    /***
+     * 查找下一个RESET帧和忽略文件末尾未写完的帧时跳过的字节数
+     */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
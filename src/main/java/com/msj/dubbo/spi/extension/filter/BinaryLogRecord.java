@@ -0,0 +1,204 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * @Description: 从二进制日志中读出的一条记录, 访问日志可以还原为与文本格式相同的一行, 或转换为JSON
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class BinaryLogRecord implements AccessRecord {
+
+    long time;
+    /**
+     * 非访问日志的文本记录, 访问日志为null
+     */
+    String text;
+    boolean consumerSide;
+    String traceId;
+    String spanId;
+    String parentSpanId;
+    String methodPrefix;
+    String application;
+    String peerApplication;
+    String localHost;
+    int localPort;
+    String remoteHost;
+    int remotePort;
+    long elapsed;
+    boolean failed;
+    String failureMessage;
+    String arguments;
+    String returnValue;
+
+    BinaryLogRecord() {
+    }
+
+    /***
+     * 记录时间, 毫秒
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /***
+     * 是否为访问日志, 否则只有 {@link #getText()}
+     */
+    public boolean isAccess() {
+        return text == null;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /***
+     * 与文本日志相同的内容, 不含时间前缀
+     */
+    public String toText() {
+        if (text != null) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(256);
+        render(sb);
+        return sb.toString();
+    }
+
+    /***
+     * 转换为JSON对象, 参数和返回值保持为日志中的JSON文本(可能被截断)
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject(true);
+        json.put("time", time);
+        if (text != null) {
+            json.put("text", text);
+            return json;
+        }
+        json.put("side", consumerSide ? AccessLogStats.CONSUMER : AccessLogStats.PROVIDER);
+        json.put("traceId", traceId);
+        json.put("spanId", spanId);
+        json.put("parentSpanId", parentSpanId);
+        json.put("method", methodPrefix == null ? null : methodPrefix.trim());
+        json.put("application", application);
+        json.put("peerApplication", peerApplication);
+        json.put("localHost", localHost);
+        json.put("localPort", localPort);
+        json.put("remoteHost", remoteHost);
+        json.put("remotePort", remotePort);
+        json.put("elapsed", elapsed);
+        json.put("status", failed ? "FAILED" : "DONE");
+        if (failed) {
+            json.put("error", failureMessage);
+        }
+        if (arguments != null) {
+            json.put("arguments", arguments);
+        }
+        if (returnValue != null) {
+            json.put("returnValue", returnValue);
+        }
+        return json;
+    }
+
+    @Override
+    public boolean isConsumerSide() {
+        return consumerSide;
+    }
+
+    @Override
+    public String getTraceId() {
+        return traceId;
+    }
+
+    @Override
+    public String getSpanId() {
+        return spanId;
+    }
+
+    @Override
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    @Override
+    public String getMethodPrefix() {
+        return methodPrefix;
+    }
+
+    @Override
+    public String getApplication() {
+        return application;
+    }
+
+    @Override
+    public String getPeerApplication() {
+        return peerApplication;
+    }
+
+    @Override
+    public String getLocalHost() {
+        return localHost;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return remoteHost;
+    }
+
+    @Override
+    public int getRemotePort() {
+        return remotePort;
+    }
+
+    @Override
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public String getFailureMessage() {
+        return failureMessage;
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return arguments != null;
+    }
+
+    @Override
+    public void appendArguments(StringBuilder sb) {
+        sb.append(arguments);
+    }
+
+    @Override
+    public boolean hasReturnValue() {
+        return returnValue != null;
+    }
+
+    @Override
+    public void appendReturnValue(StringBuilder sb) {
+        sb.append(returnValue);
+    }
+
+    public String getArguments() {
+        return arguments;
+    }
+
+    public String getReturnValue() {
+        return returnValue;
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+}
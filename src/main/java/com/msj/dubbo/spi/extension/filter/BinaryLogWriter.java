@@ -0,0 +1,256 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static com.msj.dubbo.spi.extension.filter.BinaryLogFormat.*;
+
+/**
+ * @Description: 二进制格式的日志输出, 格式见 {@link BinaryLogFormat}.
+ * 访问日志按字段编码, 重复的服务方法、应用名和主机只在每个字典段中写一次; 其他日志按文本帧写入.
+ * 用 {@link BinaryLogReader} 读取, 或用 {@link BinaryLogConverter} 转换为文本或JSON lines
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class BinaryLogWriter implements LogWriter {
+
+    private final boolean millis;
+
+    private final Encoder payload = new Encoder();
+
+    private final Encoder frameHeader = new Encoder();
+
+    private final CRC32 crc = new CRC32();
+
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+    /**
+     * 参数和返回值JSON的缓冲
+     */
+    private StringBuilder json = new StringBuilder(256);
+
+    private OutputStream out;
+
+    private long length;
+
+    /**
+     * 当前字典段开始的位置
+     */
+    private long segmentStart;
+
+    /**
+     * 当前字典段中上一条记录的时间, 记录中只写差值
+     */
+    private long lastTime;
+
+    public BinaryLogWriter() {
+        this(false);
+    }
+
+    /***
+     * @param millis    转换为文本时是否输出毫秒, 记录本身总是保存毫秒
+     */
+    public BinaryLogWriter(boolean millis) {
+        this.millis = millis;
+    }
+
+    @Override
+    public void open(File file) throws IOException {
+        out = new BufferedOutputStream(new FileOutputStream(file, true), 128000);
+        length = file.length();
+        reset();
+    }
+
+    /***
+     * 写RESET帧, 清空字典
+     */
+    private void reset() throws IOException {
+        segmentStart = length;
+        dictionary.clear();
+        lastTime = 0;
+        payload.reset();
+        payload.writeBytes(MAGIC);
+        payload.writeByte(VERSION);
+        payload.writeByte(millis ? OPTION_MILLIS : 0);
+        writeFrame(FRAME_RESET);
+    }
+
+    @Override
+    public void write(long time, CharSequence message) throws IOException {
+        if (length - segmentStart >= SEGMENT_BYTES) {
+            reset();
+        }
+        payload.reset();
+        payload.writeZigZag(time - lastTime);
+        payload.writeTail(message == null ? "null" : message);
+        lastTime = time;
+        writeFrame(FRAME_TEXT);
+    }
+
+    /***
+     * 按字段写一条访问日志
+     * @param time  记录时间
+     * @param record    访问日志
+     */
+    public void write(long time, AccessRecord record) throws IOException {
+        if (dictionary.size() + 5 > MAX_DICTIONARY_SIZE || length - segmentStart >= SEGMENT_BYTES) {
+            reset();
+        }
+        //字典帧必须在引用它的记录之前写出
+        int method = lookup(record.getMethodPrefix());
+        int application = lookup(record.getApplication());
+        int peerApplication = lookup(record.getPeerApplication());
+        int localHost = lookup(record.getLocalHost());
+        int remoteHost = lookup(record.getRemoteHost());
+
+        String traceId = record.getTraceId();
+        String spanId = record.getSpanId();
+        String parentSpanId = spanId == null ? null : record.getParentSpanId();
+        boolean failed = record.isFailed();
+        boolean arguments = record.hasArguments();
+        boolean returnValue = !failed && record.hasReturnValue();
+        int flags = 0;
+        if (record.isConsumerSide()) {
+            flags |= FLAG_CONSUMER;
+        }
+        if (failed) {
+            flags |= FLAG_FAILED;
+        }
+        if (spanId != null) {
+            flags |= FLAG_SPAN;
+            if (parentSpanId != null) {
+                flags |= FLAG_PARENT;
+            }
+            if (isHex(spanId, 16) && (parentSpanId == null || isHex(parentSpanId, 16))) {
+                flags |= FLAG_HEX_SPAN;
+            }
+        }
+        if (arguments) {
+            flags |= FLAG_ARGUMENTS;
+        }
+        if (returnValue) {
+            flags |= FLAG_RETURN;
+        }
+        if (isHex(traceId, 32)) {
+            flags |= FLAG_HEX_TRACE;
+        }
+
+        payload.reset();
+        payload.writeZigZag(time - lastTime);
+        payload.writeByte(flags);
+        if ((flags & FLAG_HEX_TRACE) != 0) {
+            payload.writeHex(traceId);
+        } else {
+            payload.writeString(traceId);
+        }
+        if (spanId != null) {
+            if ((flags & FLAG_HEX_SPAN) != 0) {
+                payload.writeHex(spanId);
+                if (parentSpanId != null) {
+                    payload.writeHex(parentSpanId);
+                }
+            } else {
+                payload.writeString(spanId);
+                if (parentSpanId != null) {
+                    payload.writeString(parentSpanId);
+                }
+            }
+        }
+        payload.writeVarLong(method);
+        payload.writeVarLong(application);
+        payload.writeVarLong(peerApplication);
+        payload.writeVarLong(localHost);
+        payload.writeVarLong(record.getLocalPort());
+        payload.writeVarLong(remoteHost);
+        payload.writeVarLong(record.getRemotePort());
+        payload.writeVarLong(record.getElapsed());
+        if (failed) {
+            payload.writeString(record.getFailureMessage());
+        }
+        if (arguments) {
+            json.setLength(0);
+            record.appendArguments(json);
+            payload.writeString(json);
+        }
+        if (returnValue) {
+            json.setLength(0);
+            record.appendReturnValue(json);
+            payload.writeString(json);
+        }
+        if (json.capacity() > 1024 * 1024) {
+            json = new StringBuilder(256);
+        }
+        lastTime = time;
+        writeFrame(FRAME_ACCESS);
+    }
+
+    /***
+     * 字符串的字典编号加1, 0表示null; 第一次出现时先写字典帧
+     */
+    private int lookup(String value) throws IOException {
+        if (value == null) {
+            return 0;
+        }
+        Integer id = dictionary.get(value);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.put(value, id);
+            payload.reset();
+            payload.writeVarLong(id);
+            payload.writeTail(value);
+            writeFrame(FRAME_DICT);
+        }
+        return id + 1;
+    }
+
+    private void writeFrame(int type) throws IOException {
+        int size = payload.size();
+        crc.reset();
+        crc.update(type);
+        crc.update(payload.array(), 0, size);
+        int checksum = (int) crc.getValue();
+        frameHeader.reset();
+        frameHeader.writeByte(type);
+        frameHeader.writeVarLong(size);
+        out.write(frameHeader.array(), 0, frameHeader.size());
+        out.write(payload.array(), 0, size);
+        out.write(checksum >>> 24);
+        out.write(checksum >>> 16);
+        out.write(checksum >>> 8);
+        out.write(checksum);
+        length += frameHeader.size() + size + 4;
+        payload.trim();
+    }
+
+    @Override
+    public void flush(boolean force) throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            out = null;
+        }
+    }
+}
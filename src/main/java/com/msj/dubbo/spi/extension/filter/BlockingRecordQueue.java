@@ -0,0 +1,52 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * @Description: 基于ArrayBlockingQueue的记录队列, 每条记录新建Record
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class BlockingRecordQueue implements RecordQueue {
+
+    private final ArrayBlockingQueue<AsyncLogger.Record> queue;
+
+    private final int capacity;
+
+    public BlockingRecordQueue(int capacity) {
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<AsyncLogger.Record>(capacity);
+    }
+
+    @Override
+    public boolean offer(long time, String message, LogEvent event) {
+        return queue.offer(new AsyncLogger.Record(time, message, event));
+    }
+
+    @Override
+    public int drain(Consumer<AsyncLogger.Record> handler) {
+        int count = 0;
+        AsyncLogger.Record rec;
+        while ((rec = queue.poll()) != null) {
+            handler.accept(rec);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean discardOldest() {
+        return queue.poll() != null;
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+}
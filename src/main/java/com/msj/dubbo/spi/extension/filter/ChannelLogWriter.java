@@ -0,0 +1,192 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.msj.dubbo.spi.extension.util.CachedTimestamp;
+import com.msj.dubbo.spi.extension.util.Utf8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @Description: 把日志直接按UTF-8编码到可复用的直接内存中, 攒够大小或时间后用FileChannel聚合写出
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class ChannelLogWriter implements LogWriter {
+
+    private static final int BUFFER_COUNT = 4;
+
+    private static final byte[] SEPARATOR = ": ".getBytes();
+
+    private final ByteBuffer[] buffers = new ByteBuffer[BUFFER_COUNT];
+
+    private final long flushBytes;
+
+    private final long flushIntervalMillis;
+
+    private final CachedTimestamp timestamp;
+
+    private FileChannel channel;
+
+    /**
+     * 当前写入的buffer下标
+     */
+    private int current;
+
+    private long pendingBytes;
+
+    /**
+     * 已写入文件的字节数
+     */
+    private long fileLength;
+
+    /**
+     * 缓冲中最早一条未落盘记录的写入时间, 0表示缓冲为空
+     */
+    private long pendingSince;
+
+    /***
+     * @param flushBytes    缓冲达到该字节数时写出, 同时决定直接内存大小
+     * @param flushIntervalMillis   缓冲中的记录最长停留时间
+     * @param millis    时间是否输出毫秒
+     */
+    public ChannelLogWriter(long flushBytes, long flushIntervalMillis, boolean millis) {
+        int size = (int) Math.max(4096, flushBytes / BUFFER_COUNT);
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(size);
+        }
+        this.flushBytes = flushBytes;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.timestamp = new CachedTimestamp(millis);
+    }
+
+    @Override
+    public void open(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        fileLength = channel.size();
+    }
+
+    @Override
+    public void write(long time, CharSequence message) throws IOException {
+        if (pendingSince == 0) {
+            pendingSince = System.currentTimeMillis();
+        }
+        if (buffers[current].remaining() < timestamp.length()) {
+            nextBuffer();
+        }
+        timestamp.writeTo(time, buffers[current]);
+        pendingBytes += timestamp.length();
+        put(SEPARATOR);
+        put(message);
+        put((byte) '\n');
+    }
+
+    private void put(CharSequence s) throws IOException {
+        if (s == null) {
+            s = "null";
+        }
+        int len = s.length();
+        int i = 0;
+        while (true) {
+            ByteBuffer buf = buffers[current];
+            int start = buf.position();
+            i = Utf8.encode(s, i, buf);
+            pendingBytes += buf.position() - start;
+            if (i >= len) {
+                return;
+            }
+            nextBuffer();
+        }
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (buffers[current].remaining() < bytes.length) {
+            nextBuffer();
+        }
+        buffers[current].put(bytes);
+        pendingBytes += bytes.length;
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffers[current].hasRemaining()) {
+            nextBuffer();
+        }
+        buffers[current].put(b);
+        pendingBytes++;
+    }
+
+    /***
+     * 切换到下一块buffer, 全部写满时聚合写出
+     */
+    private void nextBuffer() throws IOException {
+        if (current + 1 < BUFFER_COUNT) {
+            current++;
+        } else {
+            writeOut();
+        }
+    }
+
+    private void writeOut() throws IOException {
+        for (int i = 0; i <= current; i++) {
+            buffers[i].flip();
+        }
+        ByteBuffer last = buffers[current];
+        while (last.hasRemaining()) {
+            channel.write(buffers, 0, current + 1);
+        }
+        for (int i = 0; i <= current; i++) {
+            buffers[i].clear();
+        }
+        current = 0;
+        fileLength += pendingBytes;
+        pendingBytes = 0;
+        pendingSince = 0;
+    }
+
+    @Override
+    public long length() {
+        return fileLength + pendingBytes;
+    }
+
+    @Override
+    public void flush(boolean force) throws IOException {
+        if (pendingBytes == 0 || channel == null) {
+            return;
+        }
+        if (force || pendingBytes >= flushBytes
+                || System.currentTimeMillis() - pendingSince >= flushIntervalMillis) {
+            writeOut();
+        }
+    }
+
+    /***
+     * 缓冲中是否有未写出的数据
+     */
+    public boolean hasPending() {
+        return pendingBytes > 0;
+    }
+
+    @Override
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush(true);
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            channel = null;
+            for (ByteBuffer buffer : buffers) {
+                buffer.clear();
+            }
+            current = 0;
+            pendingBytes = 0;
+            pendingSince = 0;
+        }
+    }
+}
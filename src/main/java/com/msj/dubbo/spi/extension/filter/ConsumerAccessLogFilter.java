@@ -1,9 +1,13 @@
 package com.msj.dubbo.spi.extension.filter;
 
+import org.apache.dubbo.common.URL;
 import org.apache.dubbo.common.constants.CommonConstants;
 import org.apache.dubbo.common.extension.Activate;
 import org.apache.dubbo.rpc.*;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * @Description: dubbo consumer日志
  * @Author: Vincent.M mengshaojie@188.com
@@ -14,28 +18,26 @@ import org.apache.dubbo.rpc.*;
 public class ConsumerAccessLogFilter implements Filter {
 
     private static final String APPLICATION = "application";
-    private static final String ACCESS_LOG_PATH = "accesslogpath";
-
-    private volatile boolean inited = false;
-    private static final Object lock = new Object();
-
-    private AccessLogWrapper logWrapper;
 
+    /**
+     * 按应用缓存进程内共用的AccessLogWrapper, 同一进程中可能有多个应用
+     */
+    private final ConcurrentMap<String, AccessLogWrapper> logWrappers = new ConcurrentHashMap<String, AccessLogWrapper>();
 
     @Override
     public Result invoke(Invoker<?> invoker, Invocation invocation) throws RpcException {
-        invocation.getAttachments().put("consumer", invoker.getUrl().getParameter(APPLICATION));
-        init(invoker.getUrl().getParameter(ACCESS_LOG_PATH), invoker.getUrl().getParameter(APPLICATION) + "-consumer");
-        return logWrapper.invoke(invoker, invocation);
+        String application = invoker.getUrl().getParameter(APPLICATION);
+        invocation.getAttachments().put("consumer", application);
+        return logWrapper(invoker.getUrl(), application).invoke(invoker, invocation);
     }
 
-    private void init(String path, String name) {
-        if (!inited) {
-            if (logWrapper == null) {
-                synchronized (lock) {
-                    logWrapper = new AccessLogWrapper(path, name);
-                }
-            }
+    private AccessLogWrapper logWrapper(URL url, String application) {
+        String key = application == null ? "" : application;
+        AccessLogWrapper logWrapper = logWrappers.get(key);
+        if (logWrapper == null) {
+            logWrapper = AccessLogWrapper.of(url, application + "-consumer");
+            logWrappers.putIfAbsent(key, logWrapper);
         }
+        return logWrapper;
     }
 }
@@ -6,15 +6,13 @@
  */
 package com.msj.dubbo.spi.extension.filter;
 
+import com.msj.dubbo.spi.extension.trace.TraceContext;
+import com.msj.dubbo.spi.extension.trace.TraceIds;
 import com.msj.dubbo.spi.extension.util.ThreadMdcUtil;
 import org.apache.dubbo.common.constants.CommonConstants;
 import org.apache.dubbo.common.extension.Activate;
 import org.apache.dubbo.common.utils.StringUtils;
 import org.apache.dubbo.rpc.*;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.UUID;
 
 /**
  * 消费者traceId拦截器
@@ -23,20 +21,61 @@ import java.util.UUID;
 @Activate(group = {CommonConstants.CONSUMER},order = 0)
 public class ConsumerTraceIdFilter implements Filter {
 
-    private static final Logger LOG = LoggerFactory.getLogger(ConsumerTraceIdFilter.class);
+    private volatile TraceLogger traceLogger;
+
+    /***
+     * traceId日志, 第一次调用时按invoker url的tracelog参数创建
+     */
+    public TraceLogger getTraceLogger() {
+        return traceLogger;
+    }
+
+    private TraceLogger traceLogger(Invoker<?> invoker) {
+        TraceLogger current = traceLogger;
+        if (current == null) {
+            synchronized (this) {
+                current = traceLogger;
+                if (current == null) {
+                    current = new TraceLogger(invoker.getUrl(), ConsumerTraceIdFilter.class, CommonConstants.CONSUMER_SIDE);
+                    traceLogger = current;
+                }
+            }
+        }
+        return current;
+    }
 
     @Override
     public Result invoke(Invoker<?> invoker, Invocation invocation) throws RpcException {
         String traceId = ThreadMdcUtil.getTraceId();
         if (StringUtils.isEmpty(traceId)) {
             // *) 从RpcContext里获取traceId并保存
-            traceId = UUID.randomUUID().toString();
-            LOG.info("[dubbo] [filter] [ConsumerTraceIdFilter],new traceId:{}",traceId);
+            traceId = TraceIds.generate();
+            traceLogger(invoker).log(traceId, true);
         }else{
-            LOG.info("[dubbo] [filter] [ConsumerTraceIdFilter],traceId:{}",traceId);
+            traceLogger(invoker).log(traceId, false);
+        }
+        TraceContext span = clientSpan(traceId);
+        RpcContext context = RpcContext.getContext();
+        context.setAttachment(ThreadMdcUtil.LOG_TRACE_ID, traceId);
+        String traceParent = span.toTraceParent();
+        if (traceParent != null) {
+            context.setAttachment(TraceContext.TRACE_PARENT, traceParent);
         }
-        RpcContext.getContext().setAttachment(ThreadMdcUtil.LOG_TRACE_ID, traceId);
+        context.set(TraceContext.RPC_CONTEXT_KEY, span);
         // *) 实际的rpc调用
         return invoker.invoke(invocation);
     }
+
+    /***
+     * 本次调用的span, 父span优先取当前线程的上下文, 在线程池中执行时取MDC中传递的spanId
+     */
+    private static TraceContext clientSpan(String traceId) {
+        TraceContext parent = TraceContext.current();
+        if (parent != null && traceId.equals(parent.getTraceId())) {
+            return parent.newChild();
+        }
+        String parentSpanId = ThreadMdcUtil.getSpanId();
+        return new TraceContext(traceId, TraceContext.newSpanId(),
+                StringUtils.isEmpty(parentSpanId) ? null : parentSpanId, true);
+    }
 }
\ No newline at end of file
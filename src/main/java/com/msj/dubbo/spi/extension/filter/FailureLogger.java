@@ -0,0 +1,259 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.msj.dubbo.spi.extension.util.TokenBucket;
+import org.apache.dubbo.common.logger.Logger;
+import org.apache.dubbo.common.utils.NamedThreadFactory;
+import org.apache.dubbo.rpc.RpcException;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 调用失败的日志. 按方法和异常指纹(异常链各层的类型和RpcException错误码)分组,
+ * 每组在一个汇总周期内只输出前几次的完整堆栈, 之后只计数, 按周期输出一行汇总; 日志在后台线程中输出, 不阻塞调用线程.
+ * 下游故障时大量相同的失败不会刷屏, 也不会让业务线程阻塞在appender上.
+ * 指纹不读取调用栈, 只在分组创建时取一次首个栈帧用于汇总行, 失败风暴中每次失败不再生成StackTraceElement数组
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class FailureLogger {
+
+    /**
+     * 输出带堆栈日志的后台线程, 队列满时丢弃并计入dropped
+     */
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(1024), new NamedThreadFactory("dubbo-accesslog-failure", true));
+
+    /**
+     * 定期输出汇总的后台线程
+     */
+    private static final ScheduledExecutorService REPORTER = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("dubbo-accesslog-failure-report", true));
+
+    /**
+     * 最多跟踪的分组数, 超过后新的失败只计入untracked
+     */
+    private static final int MAX_GROUPS = 1024;
+
+    /**
+     * 指纹包含的异常链层数
+     */
+    private static final int MAX_CAUSES = 4;
+
+    private final Logger logger;
+
+    private final int limit;
+
+    /**
+     * 所有分组共用的完整堆栈输出速率, 不限制时为null
+     */
+    private final TokenBucket bucket;
+
+    private final long intervalSeconds;
+
+    private final ConcurrentMap<Key, Group> groups = new ConcurrentHashMap<Key, Group>();
+
+    /**
+     * 分组数达到上限后未能跟踪的失败数
+     */
+    private final AtomicLong untracked = new AtomicLong();
+
+    /**
+     * 输出队列满时丢弃的堆栈日志数
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * 定期汇总的任务, 不汇总时为null
+     */
+    private final ScheduledFuture<?> reportFuture;
+
+    /***
+     * @param logger    输出日志的logger
+     * @param limit     每组每个汇总周期内输出完整堆栈的次数
+     * @param perSecond 每秒最多输出的完整堆栈数, 0不限制
+     * @param intervalSeconds   汇总输出间隔, 0为不汇总, 每组只输出前limit次
+     */
+    public FailureLogger(Logger logger, int limit, double perSecond, long intervalSeconds) {
+        this.logger = logger;
+        this.limit = limit;
+        this.bucket = perSecond > 0 ? new TokenBucket(perSecond) : null;
+        this.intervalSeconds = intervalSeconds;
+        this.reportFuture = intervalSeconds > 0
+                ? REPORTER.scheduleWithFixedDelay(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS)
+                : null;
+    }
+
+    /***
+     * 记录一次失败
+     * @param method    方法, 如 group/com.xx.Service:1.0.0 sayHello(java.lang.String)
+     * @param ex    异常
+     * @return 是否需要输出完整日志, 为true时调用 {@link #warn(String, Throwable)}
+     */
+    public boolean record(String method, Throwable ex) {
+        Key key = new Key(method, fingerprint(ex));
+        Group group = groups.get(key);
+        if (group == null) {
+            if (groups.size() >= MAX_GROUPS) {
+                untracked.incrementAndGet();
+                return false;
+            }
+            Group created = new Group(method.trim(), ex.getClass().getName(), site(ex));
+            group = groups.putIfAbsent(key, created);
+            if (group == null) {
+                group = created;
+            }
+        }
+        group.count.incrementAndGet();
+        group.lastMessage = ex.getMessage();
+        if (group.logged.get() < limit && group.logged.incrementAndGet() <= limit
+                && (bucket == null || bucket.tryAcquire())) {
+            return true;
+        }
+        group.suppressed.incrementAndGet();
+        return false;
+    }
+
+    /***
+     * 在后台线程中输出带堆栈的日志
+     */
+    public void warn(String message, Throwable ex) {
+        try {
+            EXECUTOR.execute(() -> logger.warn(message, ex));
+        } catch (RejectedExecutionException e) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /***
+     * 停止定期汇总, 并输出最后一个周期的汇总
+     */
+    public void shutdown() {
+        if (reportFuture != null && reportFuture.cancel(false)) {
+            report();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /***
+     * 输出各组本周期内未输出堆栈的次数, 本周期没有失败的组移除, 再次失败时重新输出完整堆栈
+     */
+    private void report() {
+        try {
+            for (Map.Entry<Key, Group> entry : groups.entrySet()) {
+                Group group = entry.getValue();
+                long count = group.count.getAndSet(0);
+                long suppressed = group.suppressed.getAndSet(0);
+                if (count == 0) {
+                    //与record并发时可能少计一次, 不影响汇总的用途
+                    groups.remove(entry.getKey(), group);
+                    continue;
+                }
+                group.logged.set(0);
+                if (suppressed > 0) {
+                    logger.warn("service invoke failed " + count + " times in last " + intervalSeconds + "s, "
+                            + suppressed + " without stack trace: " + group.method + " " + group.exceptionClass
+                            + ": " + group.lastMessage + (group.site == null ? "" : " at " + group.site));
+                }
+            }
+            long lost = untracked.getAndSet(0);
+            if (lost > 0) {
+                logger.warn("service invoke failed " + lost + " times in last " + intervalSeconds
+                        + "s, not grouped: too many distinct failures");
+            }
+            long lostWarns = dropped.getAndSet(0);
+            if (lostWarns > 0) {
+                logger.warn(lostWarns + " failure stack traces dropped in last " + intervalSeconds
+                        + "s: failure log queue full");
+            }
+        } catch (Throwable t) {
+            logger.warn("failure report failed", t);
+        }
+    }
+
+    /***
+     * 异常链中各层的类型和RpcException错误码的哈希, 不包含异常信息(通常带有id等变化的内容).
+     * 不读取调用栈: getStackTrace()每次都要生成并复制StackTraceElement数组, 失败风暴中比记录本身更贵
+     */
+    static int fingerprint(Throwable ex) {
+        int hash = 1;
+        Throwable t = ex;
+        for (int depth = 0; t != null && depth < MAX_CAUSES; depth++, t = t.getCause()) {
+            hash = 31 * hash + t.getClass().getName().hashCode();
+            if (t instanceof RpcException) {
+                hash = 31 * hash + ((RpcException) t).getCode();
+            }
+        }
+        return hash;
+    }
+
+    /***
+     * 异常抛出的位置(首个栈帧), 每个分组只在创建时取一次
+     */
+    private static String site(Throwable ex) {
+        StackTraceElement[] frames = ex.getStackTrace();
+        return frames.length == 0 ? null : frames[0].toString();
+    }
+
+    private static final class Key {
+        private final String method;
+        private final int fingerprint;
+
+        Key(String method, int fingerprint) {
+            this.method = method;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return fingerprint == key.fingerprint && method.equals(key.method);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * method.hashCode() + fingerprint;
+        }
+    }
+
+    private static final class Group {
+        private final String method;
+        private final String exceptionClass;
+        /**
+         * 分组中第一次失败的抛出位置
+         */
+        private final String site;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong suppressed = new AtomicLong();
+        /**
+         * 本周期内已输出完整堆栈的次数
+         */
+        private final AtomicInteger logged = new AtomicInteger();
+        private volatile String lastMessage;
+
+        Group(String method, String exceptionClass, String site) {
+            this.method = method;
+            this.exceptionClass = exceptionClass;
+            this.site = site;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.common.constants.CommonConstants;
+import org.apache.dubbo.rpc.Invoker;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @Description: 每个invoker访问日志中不变的部分, 只计算一次; url变化(动态配置)后重新计算
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+final class InvokerLogMeta {
+
+    /**
+     * 每个invoker最多缓存的方法名数, 泛化调用等场景下防止无限增长; 超过后新方法不缓存, 已缓存的方法不受影响
+     */
+    static final int MAX_METHODS = 512;
+
+    private static final String LEVEL_ARG_KEY = "loglevel";
+
+    private static final String APPLICATION_KEY = "application";
+
+    /**
+     * 计算时使用的url, 与invoker当前url不是同一个对象时缓存失效
+     */
+    final URL url;
+
+    final String application;
+
+    /**
+     * group/serviceName:version
+     */
+    final String serviceKey;
+
+    /**
+     * 采样配置的默认值, 可被url中的方法级别参数覆盖
+     */
+    private final AccessLogConfig defaults;
+
+    private final ConcurrentMap<String, MethodLogMeta[]> methods = new ConcurrentHashMap<String, MethodLogMeta[]>();
+
+    /**
+     * 超过缓存上限的方法共用的服务级别采样器, 使其每秒条数限制仍然生效
+     */
+    private final AccessLogSampler overflowSampler;
+
+    InvokerLogMeta(Invoker<?> invoker, AccessLogConfig defaults) {
+        URL url = invoker.getUrl();
+        this.url = url;
+        this.defaults = defaults;
+        this.application = url.getParameter(APPLICATION_KEY);
+        String version = url.getParameter(CommonConstants.VERSION_KEY);
+        String group = url.getParameter(CommonConstants.GROUP_KEY);
+        StringBuilder key = new StringBuilder();
+        if (null != group && group.length() > 0) {
+            key.append(group).append("/");
+        }
+        key.append(invoker.getInterface().getName());
+        if (null != version && version.length() > 0) {
+            key.append(":").append(version);
+        }
+        this.serviceKey = key.toString();
+        this.overflowSampler = AccessLogSampler.of(url.getParameter(AccessLogConfig.SAMPLE_RATE, defaults.getSampleRate()),
+                url.getParameter(AccessLogConfig.SAMPLE_PER_SECOND, defaults.getSamplePerSecond()));
+    }
+
+    /***
+     * 缓存是否仍然对应invoker当前的url
+     */
+    boolean isValid(Invoker<?> invoker) {
+        return url == invoker.getUrl();
+    }
+
+    /***
+     * 获取方法的缓存信息, 重载方法按参数类型区分. 同一方法只创建一次, 其采样器(每秒条数的令牌桶)一直保留
+     */
+    MethodLogMeta method(String methodName, Class<?>[] types) {
+        MethodLogMeta[] overloads = methods.get(methodName);
+        if (overloads != null) {
+            MethodLogMeta meta = find(overloads, types);
+            if (meta != null) {
+                return meta;
+            }
+        } else if (methods.size() >= MAX_METHODS) {
+            return new MethodLogMeta(this, methodName, types, true);
+        }
+        //按方法名原子地加入重载, 并发的首次调用不会互相覆盖
+        return find(methods.compute(methodName, (name, current) -> {
+            if (current == null) {
+                return new MethodLogMeta[]{new MethodLogMeta(this, name, types, false)};
+            }
+            if (find(current, types) != null) {
+                return current;
+            }
+            MethodLogMeta[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = new MethodLogMeta(this, name, types, false);
+            return updated;
+        }), types);
+    }
+
+    private static MethodLogMeta find(MethodLogMeta[] overloads, Class<?>[] types) {
+        for (MethodLogMeta meta : overloads) {
+            if (Arrays.equals(meta.parameterTypes, types)) {
+                return meta;
+            }
+        }
+        return null;
+    }
+
+    /***
+     * 方法级别的缓存信息
+     */
+    static final class MethodLogMeta {
+        final Class<?>[] parameterTypes;
+
+        /**
+         * 方法级别loglevel, 未配置时使用服务级别, 默认SIMPLE
+         */
+        final int filterLevel;
+
+        final String application;
+
+        /**
+         * group/serviceName:version method(type1,type2)
+         */
+        final String prefix;
+
+        /**
+         * 采样器, 不采样时为null
+         */
+        final AccessLogSampler sampler;
+
+        /**
+         * 不受采样限制的耗时, 0为不按耗时放行
+         */
+        final long slowNanos;
+
+        final String serviceKey;
+
+        private final String methodName;
+
+        /**
+         * 按调用方向缓存的统计, 同一个invoker只会是其中一个方向
+         */
+        private volatile AccessLogStats.MethodStats stats;
+
+        /***
+         * @param overflow  是否为超过缓存上限而不缓存的方法, 使用服务级别的共用采样器
+         */
+        MethodLogMeta(InvokerLogMeta invokerMeta, String methodName, Class<?>[] types, boolean overflow) {
+            this.parameterTypes = types == null ? null : types.clone();
+            this.filterLevel = invokerMeta.url.getMethodParameter(methodName, LEVEL_ARG_KEY,
+                    AccessLogWrapper.FilterLevel.SIMPLE.level);
+            this.application = invokerMeta.application;
+            URL url = invokerMeta.url;
+            AccessLogConfig defaults = invokerMeta.defaults;
+            this.sampler = overflow ? invokerMeta.overflowSampler : AccessLogSampler.of(
+                    url.getMethodParameter(methodName, AccessLogConfig.SAMPLE_RATE, defaults.getSampleRate()),
+                    url.getMethodParameter(methodName, AccessLogConfig.SAMPLE_PER_SECOND, defaults.getSamplePerSecond()));
+            this.slowNanos = TimeUnit.MILLISECONDS.toNanos(
+                    url.getMethodParameter(methodName, AccessLogConfig.SLOW_MILLIS, defaults.getSlowMillis()));
+            this.serviceKey = invokerMeta.serviceKey;
+            this.methodName = methodName;
+            StringBuilder sb = new StringBuilder(invokerMeta.serviceKey).append(" ").append(methodName).append("(");
+            if (types != null && types.length > 0) {
+                boolean first = true;
+                for (Class<?> type : types) {
+                    if (first) {
+                        first = false;
+                    } else {
+                        sb.append(",");
+                    }
+                    sb.append(type.getName());
+                }
+            }
+            sb.append(") ");
+            this.prefix = sb.toString();
+        }
+
+        /***
+         * 获取方法的统计, 首次调用时从registry中取出后缓存
+         */
+        AccessLogStats.MethodStats stats(AccessLogStats registry, boolean consumerSide) {
+            AccessLogStats.MethodStats current = stats;
+            if (current == null) {
+                current = registry.method(serviceKey, methodName,
+                        consumerSide ? AccessLogStats.CONSUMER : AccessLogStats.PROVIDER);
+                stats = current;
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.PropertyPreFilter;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @Description: 把参数和返回值序列化为JSON直接追加到日志缓冲, 超过长度上限时停止序列化并追加截断标记,
+ * 可按类型排除字段
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class JsonLogSerializer {
+
+    /**
+     * 所有类型都排除的字段
+     */
+    public static final String ANY_TYPE = "*";
+
+    static final String TRUNCATED = "...(truncated)";
+
+    private final int maxLength;
+
+    private final Map<String, Set<String>> excludes;
+
+    private final Set<String> globalExcludes;
+
+    private final PropertyPreFilter excludeFilter;
+
+    /***
+     * @param maxLength 单个值序列化后的最大字符数(JSON基本为ASCII, 约等于字节数), 小于等于0不限制
+     * @param excludes  类名 -> 排除的字段名, 类名为*时对所有类型生效
+     */
+    public JsonLogSerializer(int maxLength, Map<String, Set<String>> excludes) {
+        this.maxLength = maxLength;
+        this.excludes = excludes;
+        Set<String> global = excludes.get(ANY_TYPE);
+        this.globalExcludes = global == null ? Collections.<String>emptySet() : global;
+        this.excludeFilter = excludes.isEmpty() ? null : this::accept;
+    }
+
+    /***
+     * 解析排除配置, 格式: com.foo.User:password|idCard;com.foo.Card:cvv;*:secret
+     */
+    public static Map<String, Set<String>> parseExcludes(String value) {
+        Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+        if (value == null || value.trim().isEmpty()) {
+            return result;
+        }
+        for (String item : value.split(";")) {
+            int colon = item.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            Set<String> fields = new HashSet<String>();
+            for (String field : item.substring(colon + 1).split("\\|")) {
+                if (!field.trim().isEmpty()) {
+                    fields.add(field.trim());
+                }
+            }
+            result.computeIfAbsent(item.substring(0, colon).trim(), k -> new HashSet<String>()).addAll(fields);
+        }
+        return result;
+    }
+
+    private boolean accept(JSONSerializer serializer, Object object, String name) {
+        if (globalExcludes.contains(name)) {
+            return false;
+        }
+        Set<String> fields = excludes.get(object.getClass().getName());
+        return fields == null || !fields.contains(name);
+    }
+
+    /***
+     * 序列化并追加到sb
+     * @param sb    日志缓冲
+     * @param value 参数数组或返回值
+     */
+    public void append(StringBuilder sb, Object value) {
+        if (maxLength <= 0 && excludeFilter == null) {
+            //与原先行为一致, 但直接写入sb, 不生成中间String
+            write(sb, value, new AppendWriter(sb, Integer.MAX_VALUE));
+            return;
+        }
+        AppendWriter writer = new AppendWriter(sb, maxLength <= 0 ? Integer.MAX_VALUE : maxLength);
+        write(sb, value, writer);
+        if (writer.truncated) {
+            sb.append(TRUNCATED);
+        }
+    }
+
+    private void write(StringBuilder sb, Object value, AppendWriter writer) {
+        int start = sb.length();
+        SerializeWriter out = new SerializeWriter(writer, JSON.DEFAULT_GENERATE_FEATURE, SerializerFeature.EMPTY);
+        try {
+            JSONSerializer serializer = new JSONSerializer(out, SerializeConfig.globalInstance);
+            if (excludeFilter != null) {
+                serializer.getPropertyPreFilters().add(excludeFilter);
+            }
+            serializer.write(value);
+        } catch (LimitReachedException ignore) {
+            //已达到长度上限
+        } catch (RuntimeException e) {
+            writer.discard = true;
+            out.close();
+            sb.setLength(start);
+            sb.append("<serialize failed: ").append(e).append('>');
+            return;
+        }
+        try {
+            //close时把SerializeWriter缓冲中的剩余内容写入sb, 也可能达到上限
+            out.close();
+        } catch (LimitReachedException ignore) {
+            //已达到长度上限
+        }
+    }
+
+    /**
+     * 达到长度上限时中断序列化, 不需要堆栈
+     */
+    private static final class LimitReachedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private static final LimitReachedException INSTANCE = new LimitReachedException();
+
+        private LimitReachedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * 追加到StringBuilder的Writer, 超过上限后丢弃后续内容
+     */
+    private static final class AppendWriter extends Writer {
+        private final StringBuilder sb;
+        private int remaining;
+        private boolean truncated;
+        /**
+         * 序列化失败后丢弃缓冲中剩余的内容
+         */
+        private boolean discard;
+
+        AppendWriter(StringBuilder sb, int limit) {
+            this.sb = sb;
+            this.remaining = limit;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            if (truncated || discard) {
+                return;
+            }
+            if (len > remaining) {
+                sb.append(cbuf, off, remaining);
+                remaining = 0;
+                truncated = true;
+                throw LimitReachedException.INSTANCE;
+            }
+            sb.append(cbuf, off, len);
+            remaining -= len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            if (truncated || discard) {
+                return;
+            }
+            if (len > remaining) {
+                sb.append(str, off, off + remaining);
+                remaining = 0;
+                truncated = true;
+                throw LimitReachedException.INSTANCE;
+            }
+            sb.append(str, off, off + len);
+            remaining -= len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.msj.dubbo.spi.extension.filter;
+
+/**
+ * @Description: 延迟到日志线程渲染的日志内容, 业务线程只保存渲染需要的数据
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public interface LogEvent {
+
+    /***
+     * 在日志线程中渲染为一行文本, 不含时间前缀和换行
+     * @param sb    可复用的缓冲, 调用前已清空
+     */
+    void render(StringBuilder sb);
+}
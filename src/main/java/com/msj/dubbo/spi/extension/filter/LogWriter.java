@@ -0,0 +1,80 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @Description: AsyncLogger的文件输出, 只在日志线程中调用
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public interface LogWriter {
+
+    /**
+     * PrintWriter -> BufferedWriter -> FileWriter, 每次drain后flush
+     */
+    String STREAM = "stream";
+
+    /**
+     * 直接内存批量编码, FileChannel聚合写, 按大小或时间flush
+     */
+    String CHANNEL = "channel";
+
+    /**
+     * 内存映射的预分配段文件
+     */
+    String MMAP = "mmap";
+
+    /**
+     * 按字段编码的二进制格式, 见 {@link BinaryLogWriter}
+     */
+    String BINARY = "binary";
+
+    /***
+     * 打开文件, 追加写入
+     * @param file  日志文件
+     */
+    void open(File file) throws IOException;
+
+    /***
+     * 写一行日志
+     * @param time  记录时间
+     * @param message   日志内容
+     */
+    void write(long time, CharSequence message) throws IOException;
+
+    /***
+     * 一批记录写完后调用
+     * @param force 为true时必须立即落盘, 否则由实现按大小或时间决定
+     */
+    void flush(boolean force) throws IOException;
+
+    /***
+     * 当前文件已写入的字节数(包括尚未落盘的缓冲), 用于按大小滚动
+     */
+    long length();
+
+    /***
+     * 关闭当前文件, 之后可以再次open
+     */
+    void close();
+
+    /***
+     * 根据类型创建
+     * @param type  stream | channel | mmap | binary
+     * @param config    配置
+     * @return LogWriter
+     */
+    static LogWriter newWriter(String type, AccessLogConfig config) {
+        if (CHANNEL.equalsIgnoreCase(type)) {
+            return new ChannelLogWriter(config.getFlushBytes(), config.getFlushIntervalMillis(), config.isMillis());
+        }
+        if (MMAP.equalsIgnoreCase(type)) {
+            return new MappedLogWriter(config.getSegmentSize(), config.isMillis());
+        }
+        if (BINARY.equalsIgnoreCase(type)) {
+            return new BinaryLogWriter(config.isMillis());
+        }
+        return new StreamLogWriter(config.isMillis());
+    }
+}
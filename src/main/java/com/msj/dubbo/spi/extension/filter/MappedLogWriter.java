@@ -0,0 +1,226 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.msj.dubbo.spi.extension.util.CachedTimestamp;
+import com.msj.dubbo.spi.extension.util.Utf8;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @Description: 基于内存映射的日志输出, 日志写入预分配大小的段文件, 写满后切换到下一段,
+ * 关闭或切换时截掉未使用的尾部, 文件内容仍然是普通文本.
+ * 当前正在写的段尾部为预分配的0字节, grep时可加-a参数
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class MappedLogWriter implements LogWriter {
+
+    private static final byte[] SEPARATOR = ": ".getBytes();
+
+    private final int segmentSize;
+
+    private final CachedTimestamp timestamp;
+
+    /**
+     * 第0段文件, 后续段在扩展名前插入序号, 如 app.2020-07-31.1.log
+     */
+    private File baseFile;
+
+    private int segmentIndex;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    /**
+     * 当前文件之前各段的总字节数
+     */
+    private long closedBytes;
+
+    /***
+     * @param segmentSize   每段文件预分配的字节数
+     * @param millis    时间是否输出毫秒
+     */
+    public MappedLogWriter(int segmentSize, boolean millis) {
+        this.segmentSize = segmentSize;
+        this.timestamp = new CachedTimestamp(millis);
+    }
+
+    @Override
+    public void open(File file) throws IOException {
+        this.baseFile = file;
+        //续写已有的最后一段
+        int index = 0;
+        closedBytes = 0;
+        while (segmentFile(index + 1).exists()) {
+            closedBytes += segmentFile(index).length();
+            index++;
+        }
+        openSegment(index);
+    }
+
+    private File segmentFile(int index) {
+        if (index == 0) {
+            return baseFile;
+        }
+        String name = baseFile.getName();
+        int dot = name.lastIndexOf('.');
+        String segmentName = dot > 0 ? name.substring(0, dot) + "." + index + name.substring(dot) : name + "." + index;
+        return new File(baseFile.getParentFile(), segmentName);
+    }
+
+    private void openSegment(int index) throws IOException {
+        this.segmentIndex = index;
+        channel = FileChannel.open(segmentFile(index).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = channel.size();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, segmentSize));
+        buffer.position(dataLength(size));
+    }
+
+    /***
+     * 已有内容的实际长度, 进程异常退出时段文件可能没有截断, 尾部为0
+     */
+    private int dataLength(long size) {
+        int end = (int) Math.min(size, buffer.capacity());
+        while (end > 0 && buffer.get(end - 1) == 0) {
+            end--;
+        }
+        return end;
+    }
+
+    @Override
+    public void write(long time, CharSequence message) throws IOException {
+        if (message == null) {
+            message = "null";
+        }
+        if (buffer.remaining() < Utf8.MAX_BYTES_PER_CHAR) {
+            nextSegment();
+        }
+        int mark = buffer.position();
+        if (writeLine(time, message)) {
+            return;
+        }
+        //放不下整行, 切换新段后重写, 保证一行不跨文件
+        if (mark > 0) {
+            buffer.position(mark);
+            nextSegment();
+            if (writeLine(time, message)) {
+                return;
+            }
+        }
+        //单行超过段大小, 只能从当前空段开始跨段写
+        writeSplit(time, message);
+    }
+
+    /***
+     * 尝试在当前段写完整行
+     * @return 空间不足返回false, 此时buffer的内容未定义
+     */
+    private boolean writeLine(long time, CharSequence message) {
+        if (buffer.remaining() < timestamp.length() + SEPARATOR.length) {
+            return false;
+        }
+        timestamp.writeTo(time, buffer);
+        buffer.put(SEPARATOR);
+        if (Utf8.encode(message, 0, buffer) < message.length() || !buffer.hasRemaining()) {
+            return false;
+        }
+        buffer.put((byte) '\n');
+        return true;
+    }
+
+    private void writeSplit(long time, CharSequence message) throws IOException {
+        buffer.position(0);
+        put(timestamp.format(time));
+        put(": ");
+        put(message);
+        put("\n");
+    }
+
+    private void put(CharSequence s) throws IOException {
+        int i = 0;
+        while ((i = Utf8.encode(s, i, buffer)) < s.length()) {
+            nextSegment();
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        closedBytes += buffer.position();
+        closeSegment();
+        openSegment(segmentIndex + 1);
+    }
+
+    @Override
+    public long length() {
+        return buffer == null ? closedBytes : closedBytes + buffer.position();
+    }
+
+    @Override
+    public void flush(boolean force) {
+        //映射内存对其他进程立即可见, 只有强制时才同步到磁盘
+        if (force && buffer != null) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        closeSegment();
+        baseFile = null;
+    }
+
+    /***
+     * 同步并截掉未使用的预分配空间
+     */
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            int length = buffer.position();
+            buffer.force();
+            unmap(buffer);
+            channel.truncate(length);
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            buffer = null;
+            channel = null;
+        }
+    }
+
+    /***
+     * 尽早释放映射, 否则要等GC, 不支持时忽略
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (NoSuchMethodException e) {
+            //jdk8
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Throwable ignore) {
+                // ignore
+            }
+        } catch (Throwable ignore) {
+            // ignore
+        }
+    }
+}
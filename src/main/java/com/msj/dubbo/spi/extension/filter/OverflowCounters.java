@@ -0,0 +1,87 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description: 日志队列溢出计数, 用于根据实际数据调整队列容量
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public final class OverflowCounters {
+
+    final LongAdder droppedNewest = new LongAdder();
+    final LongAdder droppedOldest = new LongAdder();
+    final LongAdder blockTimeouts = new LongAdder();
+    final LongAdder spilled = new LongAdder();
+    final LongAdder spillFailures = new LongAdder();
+    final LongAdder blocked = new LongAdder();
+    final LongAdder droppedAfterClose = new LongAdder();
+
+    /***
+     * DROP_NEWEST: 被丢弃的当前记录数
+     */
+    public long getDroppedNewest() {
+        return droppedNewest.sum();
+    }
+
+    /***
+     * DROP_OLDEST: 被挤出队列的旧记录数
+     */
+    public long getDroppedOldest() {
+        return droppedOldest.sum();
+    }
+
+    /***
+     * BLOCK: 等待超时后丢弃的记录数
+     */
+    public long getBlockTimeouts() {
+        return blockTimeouts.sum();
+    }
+
+    /***
+     * BLOCK: 发生过等待的记录数(包括最终写入成功的)
+     */
+    public long getBlocked() {
+        return blocked.sum();
+    }
+
+    /***
+     * SPILL: 写入溢出文件的记录数
+     */
+    public long getSpilled() {
+        return spilled.sum();
+    }
+
+    /***
+     * SPILL: 写溢出文件失败或待写记录已满而丢弃的记录数
+     */
+    public long getSpillFailures() {
+        return spillFailures.sum();
+    }
+
+    /***
+     * shutdown之后记录或shutdown时未能写入的记录数, 与溢出策略无关
+     */
+    public long getDroppedAfterClose() {
+        return droppedAfterClose.sum();
+    }
+
+    /***
+     * 未进入日志文件的记录总数, 溢出文件中的记录不计入
+     */
+    public long getLost() {
+        return getDroppedNewest() + getDroppedOldest() + getBlockTimeouts() + getSpillFailures()
+                + getDroppedAfterClose();
+    }
+
+    @Override
+    public String toString() {
+        return "droppedNewest=" + getDroppedNewest()
+                + ",droppedOldest=" + getDroppedOldest()
+                + ",blocked=" + getBlocked()
+                + ",blockTimeouts=" + getBlockTimeouts()
+                + ",spilled=" + getSpilled()
+                + ",spillFailures=" + getSpillFailures()
+                + ",droppedAfterClose=" + getDroppedAfterClose();
+    }
+}
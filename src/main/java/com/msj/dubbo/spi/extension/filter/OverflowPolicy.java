@@ -0,0 +1,42 @@
+package com.msj.dubbo.spi.extension.filter;
+
+/**
+ * @Description: 日志队列满时的处理策略
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public enum OverflowPolicy {
+    /**
+     * 丢弃当前记录
+     */
+    DROP_NEWEST,
+    /**
+     * 丢弃队列中最早的记录, 腾出位置给当前记录
+     */
+    DROP_OLDEST,
+    /**
+     * 阻塞业务线程等待队列空出, 超时后丢弃当前记录
+     */
+    BLOCK,
+    /**
+     * 写入磁盘上的溢出文件
+     */
+    SPILL;
+
+    /***
+     * 解析配置, 忽略大小写和下划线, 无法识别时使用DROP_NEWEST
+     * @param value 配置值, 如 dropoldest / drop_oldest
+     * @return OverflowPolicy
+     */
+    public static OverflowPolicy parse(String value) {
+        if (value != null) {
+            String normalized = value.replace("_", "").replace("-", "");
+            for (OverflowPolicy policy : values()) {
+                if (policy.name().replace("_", "").equalsIgnoreCase(normalized)) {
+                    return policy;
+                }
+            }
+        }
+        return DROP_NEWEST;
+    }
+}
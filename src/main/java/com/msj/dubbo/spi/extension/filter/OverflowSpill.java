@@ -0,0 +1,217 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.msj.dubbo.spi.extension.util.CachedTimestamp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Description: 队列溢出时的磁盘落地文件, 只在队列满时使用. 业务线程只把记录放入内存中的待写列表,
+ * 待写达到一批或定时到达时由抢到写锁的线程批量写入, 其他线程不等待; 文件达到上限后滚动为 <文件>.1, 最多保留两个文件
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class OverflowSpill {
+
+    /**
+     * 待写字节数达到该值时触发写入
+     */
+    static final int BATCH_BYTES = 64 * 1024;
+
+    /**
+     * 待写字节数上限, 写入跟不上时新记录按失败处理
+     */
+    static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * 时间前缀和换行的长度
+     */
+    private static final int LINE_OVERHEAD = 22;
+
+    private final File file;
+
+    private final File rolledFile;
+
+    private final long maxBytes;
+
+    private final OverflowCounters counters;
+
+    private final ConcurrentLinkedQueue<AsyncLogger.Record> pending = new ConcurrentLinkedQueue<AsyncLogger.Record>();
+
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final ScheduledFuture<?> flushTask;
+
+    /**
+     * 以下字段只在持有writeLock时访问
+     */
+    private final CachedTimestamp timestamp = new CachedTimestamp(false);
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    private Writer out;
+
+    private long written;
+
+    private volatile boolean closed;
+
+    /***
+     * @param file  溢出文件
+     * @param maxBytes  溢出文件最大字节数, 写满后滚动, 小于等于0不限制
+     * @param counters  写入成功计入spilled, 写入失败和待写已满计入spillFailures
+     * @param timer 定时写入的线程
+     * @param flushIntervalMillis   待写记录最长停留毫秒数
+     */
+    public OverflowSpill(File file, long maxBytes, OverflowCounters counters, ScheduledExecutorService timer,
+                         long flushIntervalMillis) {
+        this.file = file;
+        this.rolledFile = new File(file.getPath() + ".1");
+        this.maxBytes = maxBytes;
+        this.counters = counters;
+        this.flushTask = timer.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /***
+     * 追加一条记录, 不做IO
+     * @return 放入待写列表返回true, 待写已满或已关闭返回false
+     */
+    public boolean append(long time, String message) {
+        if (closed) {
+            counters.spillFailures.increment();
+            return false;
+        }
+        long size = message.length() + LINE_OVERHEAD;
+        long total = pendingBytes.addAndGet(size);
+        if (total > MAX_PENDING_BYTES) {
+            pendingBytes.addAndGet(-size);
+            counters.spillFailures.increment();
+            return false;
+        }
+        pending.offer(new AsyncLogger.Record(time, message));
+        if (total >= BATCH_BYTES && writeLock.tryLock()) {
+            try {
+                write();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return true;
+    }
+
+    /***
+     * 写入所有待写记录
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            write();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void write() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long ok = 0;
+        long failed = 0;
+        AsyncLogger.Record rec;
+        while ((rec = pending.poll()) != null) {
+            pendingBytes.addAndGet(-(rec.message.length() + LINE_OVERHEAD));
+            line.setLength(0);
+            timestamp.appendTo(rec.time, line);
+            line.append(": ").append(rec.message).append('\n');
+            try {
+                open();
+                out.append(line);
+                written += line.length();
+                ok++;
+            } catch (IOException e) {
+                failed++;
+                if (failed == 1) {
+                    e.printStackTrace();
+                }
+                closeQuietly();
+            }
+        }
+        try {
+            if (out != null) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeQuietly();
+        }
+        counters.spilled.add(ok);
+        counters.spillFailures.add(failed);
+    }
+
+    /***
+     * 打开文件, 达到上限时滚动
+     */
+    private void open() throws IOException {
+        if (out == null) {
+            file.getParentFile().mkdirs();
+            //按字符数计大小, 非ASCII内容时略小于实际字节数
+            written = file.length();
+            out = newWriter();
+        }
+        if (maxBytes > 0 && written >= maxBytes) {
+            out.close();
+            out = null;
+            rolledFile.delete();
+            if (!file.renameTo(rolledFile)) {
+                file.delete();
+            }
+            written = 0;
+            out = newWriter();
+        }
+    }
+
+    private Writer newWriter() throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8),
+                BATCH_BYTES);
+    }
+
+    private void closeQuietly() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                //已经记录过写入异常
+            }
+            out = null;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void close() {
+        closed = true;
+        flushTask.cancel(false);
+        writeLock.lock();
+        try {
+            write();
+            closeQuietly();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
@@ -6,15 +6,14 @@
  */
 package com.msj.dubbo.spi.extension.filter;
 
+import com.msj.dubbo.spi.extension.trace.TraceContext;
+import com.msj.dubbo.spi.extension.trace.TraceIds;
+import com.msj.dubbo.spi.extension.trace.TraceScope;
 import com.msj.dubbo.spi.extension.util.ThreadMdcUtil;
 import org.apache.dubbo.common.constants.CommonConstants;
 import org.apache.dubbo.common.extension.Activate;
 import org.apache.dubbo.common.utils.StringUtils;
 import org.apache.dubbo.rpc.*;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.UUID;
 
 /**
  * 提供者traceId拦截器
@@ -23,21 +22,51 @@ import java.util.UUID;
 @Activate(group = {CommonConstants.PROVIDER},order = 0)
 public class ProviderTraceIdFilter implements Filter {
 
-    private static final Logger LOG = LoggerFactory.getLogger(ProviderTraceIdFilter.class);
+    private volatile TraceLogger traceLogger;
+
+    /***
+     * traceId日志, 第一次调用时按invoker url的tracelog参数创建
+     */
+    public TraceLogger getTraceLogger() {
+        return traceLogger;
+    }
+
+    private TraceLogger traceLogger(Invoker<?> invoker) {
+        TraceLogger current = traceLogger;
+        if (current == null) {
+            synchronized (this) {
+                current = traceLogger;
+                if (current == null) {
+                    current = new TraceLogger(invoker.getUrl(), ProviderTraceIdFilter.class, CommonConstants.PROVIDER_SIDE);
+                    traceLogger = current;
+                }
+            }
+        }
+        return current;
+    }
 
     @Override
     public Result invoke(Invoker<?> invoker, Invocation invocation) throws RpcException {
-        String traceId = RpcContext.getContext().getAttachment(ThreadMdcUtil.LOG_TRACE_ID);
+        RpcContext context = RpcContext.getContext();
+        String traceId = context.getAttachment(ThreadMdcUtil.LOG_TRACE_ID);
+        TraceContext upstream = TraceContext.parse(context.getAttachment(TraceContext.TRACE_PARENT), traceId);
+        if (StringUtils.isEmpty(traceId) && upstream != null) {
+            traceId = upstream.getTraceId();
+        }
         if (StringUtils.isEmpty(traceId)) {
             // *) 从RpcContext里获取traceId并保存
-            traceId = UUID.randomUUID().toString();
-            LOG.info("[dubbo] [filter] [ProviderTraceIdFilter],new traceId:{}", traceId);
+            traceId = TraceIds.generate();
+            traceLogger(invoker).log(traceId, true);
         } else {
-            LOG.info("[dubbo] [filter] [ProviderTraceIdFilter],traceId:{}", traceId);
+            traceLogger(invoker).log(traceId, false);
+        }
+        TraceContext span = upstream != null ? upstream.newChild() : TraceContext.newRoot(traceId);
+        // *) 实际的rpc调用, 结束后恢复线程原有的MDC和上下文, 避免复用线程时残留
+        TraceScope scope = TraceScope.open(span);
+        try {
+            return invoker.invoke(invocation);
+        } finally {
+            scope.close();
         }
-        ThreadMdcUtil.setTraceId(traceId);
-        RpcContext.getContext().setAttachment(ThreadMdcUtil.LOG_TRACE_ID, traceId);
-        // *) 实际的rpc调用
-        return invoker.invoke(invocation);
     }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import java.util.function.Consumer;
+
+/**
+ * @Description: 异步日志的记录队列, 生产者为dubbo业务线程, 消费者为日志线程
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public interface RecordQueue {
+
+    /**
+     * 基于ArrayBlockingQueue, 单锁
+     */
+    String BLOCKING = "blocking";
+
+    /**
+     * 预分配槽位的无锁环形队列
+     */
+    String RING = "ring";
+
+    /***
+     * 入队, 队列已满时返回false
+     * @param time  记录时间
+     * @param message   日志内容
+     * @return boolean
+     */
+    default boolean offer(long time, String message) {
+        return offer(time, message, null);
+    }
+
+    /***
+     * 入队, 队列已满时返回false
+     * @param time  记录时间
+     * @param message   日志内容, event不为空时忽略
+     * @param event 延迟渲染的日志内容
+     * @return boolean
+     */
+    boolean offer(long time, String message, LogEvent event);
+
+    /***
+     * 取出所有可用记录并逐条回调, 回调中的Record可能被复用, 不要在回调之外持有
+     * @param handler   处理器
+     * @return 处理条数
+     */
+    int drain(Consumer<AsyncLogger.Record> handler);
+
+    /***
+     * 丢弃队首最早的一条记录, 供DROP_OLDEST策略使用
+     * @return 队列为空时返回false
+     */
+    boolean discardOldest();
+
+    int size();
+
+    int capacity();
+
+    /***
+     * 根据类型创建队列
+     * @param type  blocking | ring
+     * @param capacity  容量
+     * @return RecordQueue
+     */
+    static RecordQueue newQueue(String type, int capacity) {
+        if (RING.equalsIgnoreCase(type)) {
+            return new RingBufferRecordQueue(capacity);
+        }
+        return new BlockingRecordQueue(capacity);
+    }
+}
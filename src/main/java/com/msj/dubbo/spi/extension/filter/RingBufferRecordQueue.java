@@ -0,0 +1,164 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * @Description: 有界无锁环形队列(Vyukov算法), 多生产者通过CAS抢占槽位, 槽位中的Record预分配并循环复用
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class RingBufferRecordQueue implements RecordQueue {
+
+    /**
+     * 最大容量, 容量向上取2的幂, 超过2^30会溢出
+     */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    private final int mask;
+
+    private final AsyncLogger.Record[] slots;
+
+    /**
+     * 每个槽位的序号: 等于写游标时可写, 等于读游标+1时可读
+     */
+    private final AtomicLongArray sequences;
+
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+
+    public RingBufferRecordQueue(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be in [1, " + MAX_CAPACITY + "]: " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.slots = new AsyncLogger.Record[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new AsyncLogger.Record(0L, null);
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(long time, String message, LogEvent event) {
+        long pos = tail.get();
+        for (; ; ) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    AsyncLogger.Record rec = slots[index];
+                    rec.time = time;
+                    rec.message = message;
+                    rec.event = event;
+                    //发布: 槽位内容对消费者可见
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                //队列已满
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    @Override
+    public int drain(Consumer<AsyncLogger.Record> handler) {
+        int count = 0;
+        while (poll(handler)) {
+            count++;
+        }
+        return count;
+    }
+
+    /***
+     * 取出一条记录, 回调结束前槽位不会被生产者覆盖
+     * @param handler   处理器, 为null时直接丢弃
+     * @return 是否取到记录
+     */
+    boolean poll(Consumer<AsyncLogger.Record> handler) {
+        long pos = head.get();
+        for (; ; ) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    AsyncLogger.Record rec = slots[index];
+                    try {
+                        if (handler != null) {
+                            handler.accept(rec);
+                        }
+                    } finally {
+                        rec.message = null;
+                        rec.event = null;
+                        //归还槽位给下一轮生产者
+                        sequences.lazySet(index, pos + mask + 1);
+                    }
+                    return true;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    @Override
+    public boolean discardOldest() {
+        return poll(null);
+    }
+
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    @Override
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 值前的填充. 父类字段排在子类之前, 读写游标前后各有7个long, 不与对象头和相邻对象共享缓存行
+     */
+    @SuppressWarnings("unused")
+    private static class LhsPadding {
+        protected long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    private static class PaddedValue extends LhsPadding {
+        protected static final AtomicLongFieldUpdater<PaddedValue> VALUE =
+                AtomicLongFieldUpdater.newUpdater(PaddedValue.class, "value");
+
+        protected volatile long value;
+    }
+
+    /**
+     * 两侧填充缓存行的计数器, 避免读写游标伪共享
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends PaddedValue {
+        protected long p9, p10, p11, p12, p13, p14, p15;
+
+        long get() {
+            return value;
+        }
+
+        boolean compareAndSet(long expect, long update) {
+            return VALUE.compareAndSet(this, expect, update);
+        }
+    }
+}
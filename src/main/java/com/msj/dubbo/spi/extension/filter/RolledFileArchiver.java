@@ -0,0 +1,299 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.apache.dubbo.common.utils.NamedThreadFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @Description: 处理滚动后的日志文件: 在低优先级线程中建立traceId索引、gzip压缩, 并按文件数和总大小清理旧文件
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class RolledFileArchiver {
+
+    public static final String GZIP_SUFFIX = ".gz";
+
+    /**
+     * 所有日志共用一个归档线程, 压缩不应与业务线程争抢cpu
+     */
+    private static final ExecutorService ARCHIVE_EXECUTOR = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), lowPriority(new NamedThreadFactory("dubbo-asyncLogger-archive", true)));
+
+    private final File directory;
+
+    /**
+     * 日志文件名前缀, 如 app-provider.
+     */
+    private final String namePrefix;
+
+    private final boolean compress;
+
+    private final int maxFiles;
+
+    private final long maxTotalBytes;
+
+    /**
+     * 是否建立traceId索引, 见 {@link TraceIndex}
+     */
+    private final boolean index;
+
+    /***
+     * @param prefix    AsyncLogger的文件前缀(含目录)
+     * @param compress  是否gzip压缩
+     * @param maxFiles  最多保留的滚动文件数, 小于等于0不限制
+     * @param maxTotalBytes 滚动文件最大总字节数, 小于等于0不限制
+     */
+    public RolledFileArchiver(String prefix, boolean compress, int maxFiles, long maxTotalBytes) {
+        this(prefix, compress, maxFiles, maxTotalBytes, false);
+    }
+
+    /***
+     * @param prefix    AsyncLogger的文件前缀(含目录)
+     * @param compress  是否gzip压缩
+     * @param maxFiles  最多保留的滚动文件数, 小于等于0不限制
+     * @param maxTotalBytes 滚动文件最大总字节数, 小于等于0不限制
+     * @param index     是否为滚动文件建立traceId索引
+     */
+    public RolledFileArchiver(String prefix, boolean compress, int maxFiles, long maxTotalBytes, boolean index) {
+        File file = new File(prefix + "x");
+        this.directory = file.getParentFile();
+        this.namePrefix = file.getName().substring(0, file.getName().length() - 1);
+        this.compress = compress;
+        this.maxFiles = maxFiles;
+        this.maxTotalBytes = maxTotalBytes;
+        this.index = index;
+    }
+
+    /***
+     * 是否需要处理滚动文件
+     */
+    public boolean isEnabled() {
+        return compress || index || maxFiles > 0 || maxTotalBytes > 0;
+    }
+
+    /***
+     * 异步处理一个刚关闭的文件, 包括其mmap分段文件
+     * @param stem  去掉后缀的文件路径, 如 logs/app-provider.2020-07-31
+     * @param suffix    后缀, 如 .log
+     * @param active    正在写的文件, 清理时跳过
+     */
+    public void archive(String stem, String suffix, String active) {
+        ARCHIVE_EXECUTOR.execute(() -> {
+            try {
+                if (compress || index) {
+                    for (File rolled : rolledFiles(new File(stem).getName(), suffix)) {
+                        if (!index) {
+                            gzip(rolled, null, 0);
+                        } else if (!compress) {
+                            index(rolled);
+                        } else {
+                            indexAndGzip(rolled);
+                        }
+                    }
+                }
+                String activeName = new File(active).getName();
+                retain(activeName.substring(0, activeName.length() - suffix.length()), suffix);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        });
+    }
+
+    /***
+     * stem + suffix, 以及mmap分段 stem.N + suffix
+     */
+    private List<File> rolledFiles(final String stemName, final String suffix) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix)
+                && (name.equals(stemName + suffix) || name.startsWith(stemName + ".")));
+        List<File> result = new ArrayList<File>();
+        if (files != null) {
+            for (File file : files) {
+                String middle = file.getName().substring(stemName.length(), file.getName().length() - suffix.length());
+                if (middle.isEmpty() || isSegmentIndex(middle)) {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    /***
+     * 是否为正在写的文件 stem + suffix 或其mmap分段 stem.N + suffix
+     */
+    private static boolean isActive(String name, String activeStem, String suffix) {
+        if (!name.startsWith(activeStem) || !name.endsWith(suffix)
+                || name.length() < activeStem.length() + suffix.length()) {
+            return false;
+        }
+        String middle = name.substring(activeStem.length(), name.length() - suffix.length());
+        return middle.isEmpty() || isSegmentIndex(middle);
+    }
+
+    private static boolean isSegmentIndex(String middle) {
+        if (middle.length() < 2 || middle.charAt(0) != '.') {
+            return false;
+        }
+        for (int i = 1; i < middle.length(); i++) {
+            if (!Character.isDigit(middle.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void index(File file) {
+        try {
+            TraceIndex.build(file, null);
+        } catch (Throwable t) {
+            //不完整的索引会漏掉记录, 删除后查询退化为扫描
+            TraceIndex.indexFile(file).delete();
+            t.printStackTrace();
+        }
+    }
+
+    /***
+     * 建立索引后按块压缩, 记录各块在.gz中的位置. 将追加到已有的.gz时接在它的索引之后;
+     * 该.gz没有索引时不建立, 查询时整个文件顺序扫描
+     */
+    private void indexAndGzip(File file) throws IOException {
+        File indexFile = TraceIndex.indexFile(file);
+        TraceIndex previous = null;
+        if (new File(file.getPath() + GZIP_SUFFIX).exists()) {
+            previous = TraceIndex.read(indexFile);
+            if (previous == null) {
+                gzip(file, null, 0);
+                return;
+            }
+        }
+        TraceIndex traceIndex;
+        try {
+            traceIndex = TraceIndex.scan(file, previous);
+        } catch (Throwable t) {
+            indexFile.delete();
+            t.printStackTrace();
+            gzip(file, null, 0);
+            return;
+        }
+        //压缩完成前旧索引与.gz不一致, 先删除
+        indexFile.delete();
+        if (gzip(file, traceIndex, previous == null ? 0 : previous.getBlocks().size())) {
+            traceIndex.write(indexFile);
+        }
+    }
+
+    /***
+     * 压缩后删除原文件; 已存在同名.gz时(如重启后续写了同一天的文件)追加为新的gzip member, zcat可以直接读取
+     * @param traceIndex    不为null时从第firstBlock块起每块压缩为单独的member, 并记录其位置
+     * @return 是否压缩成功
+     */
+    private boolean gzip(File file, TraceIndex traceIndex, int firstBlock) throws IOException {
+        File target = new File(file.getPath() + GZIP_SUFFIX);
+        boolean append = target.exists();
+        File out = append ? target : new File(target.getPath() + ".tmp");
+        long lastModified = file.lastModified();
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file);
+             FileOutputStream fos = new FileOutputStream(out, append)) {
+            if (traceIndex == null) {
+                try (OutputStream gz = new GZIPOutputStream(new NonClosingOutputStream(fos), buf.length)) {
+                    copy(in, gz, Long.MAX_VALUE, buf);
+                }
+            } else {
+                List<TraceIndex.Block> blocks = traceIndex.getBlocks();
+                for (int i = firstBlock; i < blocks.size(); i++) {
+                    TraceIndex.Block block = blocks.get(i);
+                    block.compressedOffset = fos.getChannel().position();
+                    try (OutputStream gz = new GZIPOutputStream(new NonClosingOutputStream(fos), buf.length)) {
+                        copy(in, gz, block.getLength(), buf);
+                    }
+                }
+            }
+        }
+        if (append || out.renameTo(target)) {
+            target.setLastModified(lastModified);
+            file.delete();
+            return true;
+        }
+        return false;
+    }
+
+    private static void copy(InputStream in, OutputStream out, long length, byte[] buf) throws IOException {
+        int n;
+        while (length > 0 && (n = in.read(buf, 0, (int) Math.min(buf.length, length))) > 0) {
+            out.write(buf, 0, n);
+            length -= n;
+        }
+    }
+
+    /***
+     * 按修改时间从新到旧保留, 只计算和删除滚动后的文件; 正在写的文件及其mmap分段(含预分配的空间)不参与
+     * @param activeStem    正在写的文件去掉后缀的文件名, 如 app-provider.2020-07-31
+     * @param suffix    后缀, 如 .log
+     */
+    void retain(String activeStem, String suffix) {
+        if (maxFiles <= 0 && maxTotalBytes <= 0) {
+            return;
+        }
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(namePrefix)
+                && !isActive(name, activeStem, suffix)
+                && !name.endsWith(".tmp") && !name.endsWith(TraceIndex.SUFFIX)
+                && !name.startsWith(namePrefix + "overflow"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            //索引随日志文件计算大小和删除
+            File indexFile = TraceIndex.indexFile(files[i]);
+            total += files[i].length() + indexFile.length();
+            if ((maxFiles > 0 && i >= maxFiles) || (maxTotalBytes > 0 && total > maxTotalBytes)) {
+                files[i].delete();
+                indexFile.delete();
+            }
+        }
+    }
+
+    /**
+     * 关闭每个gzip member时不关闭文件
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static ThreadFactory lowPriority(final ThreadFactory factory) {
+        return r -> {
+            Thread thread = factory.newThread(r);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        };
+    }
+}
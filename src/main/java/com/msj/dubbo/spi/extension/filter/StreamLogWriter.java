@@ -0,0 +1,71 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.msj.dubbo.spi.extension.util.CachedTimestamp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * @Description: 基于PrintWriter的日志输出
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class StreamLogWriter implements LogWriter {
+
+    private final CachedTimestamp timestamp;
+
+    private PrintWriter writer;
+
+    /**
+     * 按字符数估算, 非ASCII内容会偏小
+     */
+    private long length;
+
+    public StreamLogWriter() {
+        this(false);
+    }
+
+    /***
+     * @param millis    时间是否输出毫秒
+     */
+    public StreamLogWriter(boolean millis) {
+        this.timestamp = new CachedTimestamp(millis);
+    }
+
+    @Override
+    public void open(File file) throws IOException {
+        writer = new PrintWriter(new BufferedWriter(new FileWriter(file, true), 128000), false);
+        length = file.length();
+    }
+
+    @Override
+    public void write(long time, CharSequence message) throws IOException {
+        timestamp.writeTo(time, writer);
+        writer.write(": ");
+        writer.append(message);
+        writer.println();
+        length += timestamp.length() + 3 + (message == null ? 4 : message.length());
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void flush(boolean force) {
+        if (writer != null)
+            writer.flush();
+    }
+
+    @Override
+    public void close() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
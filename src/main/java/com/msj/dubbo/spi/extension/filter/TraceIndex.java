@@ -0,0 +1,462 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.msj.dubbo.spi.extension.util.BloomFilter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @Description: 滚动后日志文件的traceId稀疏索引, 保存在 <日志文件>.idx 中.
+ * 文件按记录边界分为约256KB的块(二进制格式按字典段), 每块记录位置、长度、时间范围和块内traceId的布隆过滤器;
+ * 查询时只读取布隆过滤器命中的块, 见 {@link TraceSearch}. 压缩时每块写为单独的gzip member并记录其在.gz中的位置,
+ * 查询时直接定位到块解压; 没有该位置的.gz文件只能边解压边跳过
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public final class TraceIndex {
+
+    public static final String SUFFIX = ".idx";
+
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    private static final byte[] MAGIC = {'D', 'A', 'L', 'I'};
+
+    private static final int VERSION = 1;
+
+    /**
+     * 是否为二进制格式的日志
+     */
+    private final boolean binary;
+
+    /**
+     * 已索引的未压缩数据长度
+     */
+    private final long dataLength;
+
+    private final List<Block> blocks;
+
+    private TraceIndex(boolean binary, long dataLength, List<Block> blocks) {
+        this.binary = binary;
+        this.dataLength = dataLength;
+        this.blocks = blocks;
+    }
+
+    /***
+     * 日志文件对应的索引文件, 压缩前后相同: x.log 和 x.log.gz 都对应 x.log.idx
+     */
+    public static File indexFile(File log) {
+        String name = log.getName();
+        if (name.endsWith(RolledFileArchiver.GZIP_SUFFIX)) {
+            name = name.substring(0, name.length() - RolledFileArchiver.GZIP_SUFFIX.length());
+        }
+        return new File(log.getParentFile(), name + SUFFIX);
+    }
+
+    static boolean isBinaryLog(String name) {
+        if (name.endsWith(RolledFileArchiver.GZIP_SUFFIX)) {
+            name = name.substring(0, name.length() - RolledFileArchiver.GZIP_SUFFIX.length());
+        }
+        return name.endsWith(".bin");
+    }
+
+    /***
+     * 为未压缩的日志文件建立索引并写入索引文件
+     * @param log   日志文件
+     * @param previous  文件将追加到已有的.gz之后时, 该.gz的索引; 新索引的位置接在它之后
+     * @return 索引
+     */
+    public static TraceIndex build(File log, TraceIndex previous) throws IOException {
+        TraceIndex index = scan(log, previous);
+        index.write(indexFile(log));
+        return index;
+    }
+
+    /***
+     * 建立索引但不写入, 压缩时由 {@link RolledFileArchiver} 记录各块在.gz中的位置后写入
+     */
+    static TraceIndex scan(File log, TraceIndex previous) throws IOException {
+        boolean binary = isBinaryLog(log.getName());
+        List<Block> blocks = new ArrayList<Block>();
+        long base = 0;
+        if (previous != null) {
+            blocks.addAll(previous.blocks);
+            base = previous.dataLength;
+        }
+        long length;
+        try (InputStream in = new FileInputStream(log)) {
+            length = binary ? buildBinary(in, base, blocks) : buildText(in, base, blocks);
+        }
+        return new TraceIndex(binary, base + length, blocks);
+    }
+
+    private static long buildText(InputStream in, long base, List<Block> blocks) throws IOException {
+        LineScanner lines = new LineScanner(in);
+        TimeParser timeParser = new TimeParser();
+        BlockBuilder current = null;
+        while (lines.next()) {
+            byte[] buf = lines.buf;
+            int start = lines.start;
+            int tsLength = timestampLength(buf, start, lines.length);
+            if (current == null || (tsLength > 0 && lines.offset - current.offset >= BLOCK_SIZE)) {
+                if (current != null) {
+                    blocks.add(current.finish(base, lines.offset));
+                }
+                current = new BlockBuilder(lines.offset);
+            }
+            if (tsLength == 0) {
+                continue;
+            }
+            current.time(timeParser.parse(buf, start, tsLength));
+            int idStart = start + tsLength + 3;
+            int idEnd = traceIdEnd(buf, start, lines.length, tsLength);
+            if (idEnd > 0) {
+                current.add(BloomFilter.hash(buf, idStart, idEnd - idStart));
+            }
+        }
+        if (current != null) {
+            blocks.add(current.finish(base, lines.position));
+        }
+        return lines.position;
+    }
+
+    private static long buildBinary(InputStream in, long base, List<Block> blocks) throws IOException {
+        BinaryLogReader reader = new BinaryLogReader(new BufferedInputStream(in, 64 * 1024));
+        BlockBuilder current = null;
+        long segment = -1;
+        BinaryLogRecord record;
+        while ((record = reader.next()) != null) {
+            long position = reader.getSegmentPosition();
+            if (position != segment) {
+                segment = position;
+                if (current == null || position - current.offset >= BLOCK_SIZE) {
+                    if (current != null) {
+                        blocks.add(current.finish(base, position));
+                    }
+                    current = new BlockBuilder(position);
+                }
+            }
+            current.time(record.getTime());
+            if (record.isAccess() && record.getTraceId() != null) {
+                byte[] traceId = record.getTraceId().getBytes(StandardCharsets.UTF_8);
+                current.add(BloomFilter.hash(traceId, 0, traceId.length));
+            }
+        }
+        long length = reader.getPosition();
+        if (current != null) {
+            blocks.add(current.finish(base, length));
+        }
+        return length;
+    }
+
+    /***
+     * 读取索引文件, 不存在或格式不对时返回null
+     */
+    public static TraceIndex read(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            boolean binary = in.readBoolean();
+            long dataLength = in.readLong();
+            int count = in.readInt();
+            List<Block> blocks = new ArrayList<Block>(count);
+            for (int i = 0; i < count; i++) {
+                long offset = in.readLong();
+                long compressedOffset = in.readLong();
+                long length = in.readLong();
+                long minTime = in.readLong();
+                long maxTime = in.readLong();
+                int hashes = in.readUnsignedByte();
+                byte[] bits = new byte[in.readInt()];
+                in.readFully(bits);
+                Block block = new Block(offset, length, minTime, maxTime, new BloomFilter(bits, hashes));
+                block.compressedOffset = compressedOffset;
+                blocks.add(block);
+            }
+            return new TraceIndex(binary, dataLength, blocks);
+        }
+    }
+
+    void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeBoolean(binary);
+            out.writeLong(dataLength);
+            out.writeInt(blocks.size());
+            for (Block block : blocks) {
+                out.writeLong(block.offset);
+                out.writeLong(block.compressedOffset);
+                out.writeLong(block.length);
+                out.writeLong(block.minTime);
+                out.writeLong(block.maxTime);
+                byte[] bits = block.bloom.toByteArray();
+                out.writeByte(block.bloom.getHashes());
+                out.writeInt(bits.length);
+                out.write(bits);
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("rename failed: " + tmp);
+            }
+        }
+    }
+
+    /***
+     * 可能包含traceId且与时间范围有交集的块, 按位置排序
+     */
+    List<Block> candidates(String traceId, long from, long to) {
+        byte[] bytes = traceId.getBytes(StandardCharsets.UTF_8);
+        long hash = BloomFilter.hash(bytes, 0, bytes.length);
+        List<Block> result = new ArrayList<Block>();
+        for (Block block : blocks) {
+            if (block.maxTime >= from && block.minTime <= to && block.bloom.mightContain(hash)) {
+                result.add(block);
+            }
+        }
+        return result;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    public List<Block> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    /**
+     * 索引块
+     */
+    public static final class Block {
+        final long offset;
+        final long length;
+        final long minTime;
+        final long maxTime;
+        final BloomFilter bloom;
+        /**
+         * 块的gzip member在.gz中的位置, 未单独压缩时为-1
+         */
+        long compressedOffset = -1;
+
+        Block(long offset, long length, long minTime, long maxTime, BloomFilter bloom) {
+            this.offset = offset;
+            this.length = length;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.bloom = bloom;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getCompressedOffset() {
+            return compressedOffset;
+        }
+    }
+
+    private static final class BlockBuilder {
+        private final long offset;
+        private long[] hashes = new long[1024];
+        private int size;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+
+        BlockBuilder(long offset) {
+            this.offset = offset;
+        }
+
+        void add(long hash) {
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            hashes[size++] = hash;
+        }
+
+        void time(long time) {
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        }
+
+        Block finish(long base, long end) {
+            BloomFilter bloom = new BloomFilter(size);
+            for (int i = 0; i < size; i++) {
+                bloom.add(hashes[i]);
+            }
+            //没有可解析时间的块不参与时间过滤
+            long min = minTime == Long.MAX_VALUE ? Long.MIN_VALUE : minTime;
+            long max = maxTime == Long.MIN_VALUE ? Long.MAX_VALUE : maxTime;
+            return new Block(base + offset, end - offset, min, max, bloom);
+        }
+    }
+
+    /***
+     * 行首的时间 yyyy-MM-dd HH:mm:ss 或 yyyy-MM-dd HH:mm:ss.SSS 后跟": "时返回时间的长度, 否则(如返回值的续行)返回0
+     */
+    static int timestampLength(byte[] b, int start, int length) {
+        if (length < 21 || b[start + 4] != '-' || b[start + 7] != '-' || b[start + 10] != ' '
+                || b[start + 13] != ':' || b[start + 16] != ':' || !isDigit(b[start]) || !isDigit(b[start + 18])) {
+            return 0;
+        }
+        int ts = 19;
+        if (b[start + 19] == '.') {
+            ts = 23;
+        }
+        return length >= ts + 2 && b[start + ts] == ':' && b[start + ts + 1] == ' ' ? ts : 0;
+    }
+
+    /***
+     * 时间之后 "[traceId]" 的结束位置, 没有时返回0
+     */
+    static int traceIdEnd(byte[] b, int start, int length, int tsLength) {
+        int i = start + tsLength + 2;
+        int end = start + length;
+        if (i >= end || b[i] != '[') {
+            return 0;
+        }
+        for (i++; i < end; i++) {
+            if (b[i] == ']') {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * 解析行首时间, 按小时缓存时区换算结果
+     */
+    static final class TimeParser {
+        private final byte[] hourKey = new byte[13];
+        private long hourMillis = Long.MIN_VALUE;
+
+        long parse(byte[] b, int start, int tsLength) {
+            boolean cached = hourMillis != Long.MIN_VALUE;
+            for (int i = 0; cached && i < hourKey.length; i++) {
+                cached = hourKey[i] == b[start + i];
+            }
+            if (!cached) {
+                System.arraycopy(b, start, hourKey, 0, hourKey.length);
+                hourMillis = LocalDateTime.of(number(b, start, 4), number(b, start + 5, 2), number(b, start + 8, 2),
+                        number(b, start + 11, 2), 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+            long millis = hourMillis + number(b, start + 14, 2) * 60000L + number(b, start + 17, 2) * 1000L;
+            if (tsLength == 23) {
+                millis += number(b, start + 20, 3);
+            }
+            return millis;
+        }
+
+        private static int number(byte[] b, int start, int length) {
+            int n = 0;
+            for (int i = start; i < start + length; i++) {
+                n = n * 10 + (b[i] - '0');
+            }
+            return n;
+        }
+    }
+
+    /**
+     * 按行读取, 不解码字符; 行内容为 buf[start, start+length), 不含换行
+     */
+    static final class LineScanner {
+        private final InputStream in;
+        byte[] buf = new byte[64 * 1024];
+        int start;
+        int length;
+        /**
+         * 当前行在流中的位置
+         */
+        long offset;
+        /**
+         * 当前行(含换行)之后的位置
+         */
+        long position;
+        private int pos;
+        private int limit;
+        private long bufOffset;
+        private boolean eof;
+
+        LineScanner(InputStream in) {
+            this.in = in;
+        }
+
+        boolean next() throws IOException {
+            int scan = pos;
+            while (true) {
+                for (; scan < limit; scan++) {
+                    if (buf[scan] == '\n') {
+                        return line(scan, scan + 1);
+                    }
+                }
+                if (eof) {
+                    return pos < limit && line(limit, limit);
+                }
+                //当前行不完整, 移到开头后继续读
+                if (pos > 0) {
+                    System.arraycopy(buf, pos, buf, 0, limit - pos);
+                    bufOffset += pos;
+                    scan -= pos;
+                    limit -= pos;
+                    pos = 0;
+                }
+                if (limit == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                int read = in.read(buf, limit, buf.length - limit);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    limit += read;
+                }
+            }
+        }
+
+        private boolean line(int end, int next) {
+            start = pos;
+            length = end - pos;
+            if (length > 0 && buf[end - 1] == '\r') {
+                length--;
+            }
+            offset = bufOffset + pos;
+            position = bufOffset + next;
+            pos = next;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.apache.dubbo.common.URL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description: traceId filter的日志, 按url参数tracelog选择输出方式:
+ * off不输出, count只计数(默认), async通过AsyncLogger批量写文件, sync同步写slf4j info日志(旧版本行为)
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class TraceLogger {
+
+    public static final String TRACE_LOG_KEY = "tracelog";
+
+    private static final String APPLICATION = "application";
+
+    /**
+     * async方式的实例, dubbo关闭时由 {@link AccessLogShutdownHookCallback} 关闭
+     */
+    private static final List<TraceLogger> ASYNC_LOGGERS = new CopyOnWriteArrayList<TraceLogger>();
+
+    private final Verbosity verbosity;
+
+    private final Logger logger;
+
+    private final AsyncLogger asyncLogger;
+
+    /**
+     * 本节点新生成的traceId数
+     */
+    private final LongAdder created = new LongAdder();
+
+    /**
+     * 沿用上游或线程中已有traceId的次数
+     */
+    private final LongAdder propagated = new LongAdder();
+
+    /**
+     * 日志前缀, 如 [dubbo] [filter] [ConsumerTraceIdFilter],
+     */
+    private final String prefix;
+
+    /***
+     * @param url   第一个调用的invoker url
+     * @param filterClass   filter类, 用于sync方式的logger和日志前缀
+     * @param side  consumer/provider, 用于async方式的文件名
+     */
+    TraceLogger(URL url, Class<?> filterClass, String side) {
+        this.verbosity = Verbosity.parse(url.getParameter(TRACE_LOG_KEY));
+        this.logger = LoggerFactory.getLogger(filterClass);
+        this.prefix = "[dubbo] [filter] [" + filterClass.getSimpleName() + "],";
+        if (verbosity == Verbosity.ASYNC) {
+            String home = AccessLogWrapper.logHome(url.getParameter(AccessLogConfig.ACCESS_LOG_PATH));
+            asyncLogger = new AsyncLogger(home + "/" + url.getParameter(APPLICATION) + "-" + side + "-trace.", ".log");
+            ASYNC_LOGGERS.add(this);
+        } else {
+            asyncLogger = null;
+        }
+    }
+
+    /***
+     * 记录本次调用使用的traceId
+     * @param traceId   traceId
+     * @param isNew 是否为本节点新生成
+     */
+    void log(final String traceId, final boolean isNew) {
+        switch (verbosity) {
+            case OFF:
+                return;
+            case SYNC:
+                logger.info(prefix + (isNew ? "new traceId:{}" : "traceId:{}"), traceId);
+                break;
+            case ASYNC:
+                asyncLogger.log(sb -> sb.append(prefix).append(isNew ? "new traceId:" : "traceId:").append(traceId));
+                break;
+            default:
+                break;
+        }
+        if (isNew) {
+            created.increment();
+        } else {
+            propagated.increment();
+        }
+    }
+
+    /***
+     * async方式时写完队列中的日志并停止日志线程, 之后的日志只计数
+     */
+    public void shutdown() {
+        if (asyncLogger != null && ASYNC_LOGGERS.remove(this)) {
+            asyncLogger.shutdown();
+        }
+    }
+
+    /***
+     * 关闭所有async方式的实例
+     */
+    public static void shutdownAll() {
+        for (TraceLogger traceLogger : ASYNC_LOGGERS) {
+            traceLogger.shutdown();
+        }
+    }
+
+    AsyncLogger getAsyncLogger() {
+        return asyncLogger;
+    }
+
+    public Verbosity getVerbosity() {
+        return verbosity;
+    }
+
+    public long getCreated() {
+        return created.sum();
+    }
+
+    public long getPropagated() {
+        return propagated.sum();
+    }
+
+    /**
+     * 日志输出方式
+     */
+    public enum Verbosity {
+        OFF,
+        COUNT,
+        ASYNC,
+        SYNC;
+
+        static Verbosity parse(String value) {
+            if (value != null) {
+                for (Verbosity verbosity : values()) {
+                    if (verbosity.name().equalsIgnoreCase(value.trim())) {
+                        return verbosity;
+                    }
+                }
+            }
+            return COUNT;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import com.msj.dubbo.spi.extension.util.CachedTimestamp;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @Description: 按traceId查找访问日志, 支持文本和二进制格式以及压缩后的.gz文件.
+ * 有 {@link TraceIndex} 的文件只读取布隆过滤器命中的块, .gz文件中按块压缩的直接定位到块解压; 没有索引的文件(如正在写的文件)顺序扫描.
+ * 用法: java -cp ... com.msj.dubbo.spi.extension.filter.TraceSearch 目录 traceId [文件名前缀] [--from "yyyy-MM-dd HH:mm:ss"] [--to "yyyy-MM-dd HH:mm:ss"]
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class TraceSearch {
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final String traceId;
+
+    private final byte[] traceIdBytes;
+
+    private final long from;
+
+    private final long to;
+
+    private final CachedTimestamp timestamp = new CachedTimestamp(false);
+
+    private final CachedTimestamp millisTimestamp = new CachedTimestamp(true);
+
+    private long scannedBytes;
+
+    private int indexedFiles;
+
+    private int scannedFiles;
+
+    /***
+     * @param traceId   要查找的traceId
+     * @param from  开始时间(含), 毫秒
+     * @param to    结束时间(含), 毫秒
+     */
+    public TraceSearch(String traceId, long from, long to) {
+        this.traceId = traceId;
+        this.traceIdBytes = traceId.getBytes(StandardCharsets.UTF_8);
+        this.from = from;
+        this.to = to;
+    }
+
+    /***
+     * 查找目录下的日志文件
+     * @param dir   日志目录
+     * @param namePrefix    文件名前缀, 如 app-provider, 为null时查找所有日志文件
+     * @param traceId   traceId
+     * @param from  开始时间(含), 毫秒
+     * @param to    结束时间(含), 毫秒
+     * @return 按时间排序的记录
+     */
+    public static List<Match> search(File dir, String namePrefix, String traceId, long from, long to)
+            throws IOException {
+        return new TraceSearch(traceId, from, to).search(logFiles(dir, namePrefix));
+    }
+
+    /***
+     * 查找指定的日志文件
+     * @return 按时间排序的记录
+     */
+    public List<Match> search(List<File> files) throws IOException {
+        List<Match> matches = new ArrayList<Match>();
+        for (File file : files) {
+            //文件最后修改时间早于开始时间时, 其中的记录都早于开始时间
+            if (file.lastModified() < from) {
+                continue;
+            }
+            search(file, matches);
+        }
+        Collections.sort(matches, Comparator.comparingLong(Match::getTime));
+        return matches;
+    }
+
+    /***
+     * 目录下的日志文件: .log/.bin及其.gz和mmap分段文件, 不含索引、临时文件和溢出文件
+     */
+    static List<File> logFiles(File dir, String namePrefix) {
+        File[] files = dir.listFiles((d, name) -> (namePrefix == null || name.startsWith(namePrefix))
+                && (name.endsWith(".log") || name.endsWith(".bin")
+                || name.endsWith(".log" + RolledFileArchiver.GZIP_SUFFIX)
+                || name.endsWith(".bin" + RolledFileArchiver.GZIP_SUFFIX))
+                && !name.contains("overflow"));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private void search(File file, List<Match> matches) throws IOException {
+        boolean gzip = file.getName().endsWith(RolledFileArchiver.GZIP_SUFFIX);
+        boolean binary = TraceIndex.isBinaryLog(file.getName());
+        TraceIndex index = TraceIndex.read(TraceIndex.indexFile(file));
+        //未压缩的文件在建立索引后又被写入(如重启后续写)时索引不完整
+        if (index != null && (index.isBinary() != binary || (!gzip && index.getDataLength() != file.length()))) {
+            index = null;
+        }
+        List<TraceIndex.Block> blocks = index == null ? null : index.candidates(traceId, from, to);
+        if (blocks != null && blocks.isEmpty()) {
+            indexedFiles++;
+            return;
+        }
+        if (gzip && blocks != null && isSeekable(blocks)) {
+            indexedFiles++;
+            searchMembers(file, binary, blocks, matches);
+            return;
+        }
+        InputStream raw = new FileInputStream(file);
+        try (InputStream in = new BufferedInputStream(gzip ? new GZIPInputStream(raw, 64 * 1024) : raw, 64 * 1024)) {
+            if (blocks == null) {
+                scannedFiles++;
+                scan(file, in, binary, matches);
+                return;
+            }
+            indexedFiles++;
+            long position = 0;
+            for (TraceIndex.Block block : blocks) {
+                //未压缩的文件skip即seek, 压缩文件只能解压跳过
+                skipFully(in, block.offset - position);
+                LimitedInputStream limited = new LimitedInputStream(in, block.length);
+                scan(file, limited, binary, matches);
+                skipFully(limited, limited.remaining);
+                position = block.offset + block.length;
+            }
+        }
+    }
+
+    private static boolean isSeekable(List<TraceIndex.Block> blocks) {
+        for (TraceIndex.Block block : blocks) {
+            if (block.compressedOffset < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /***
+     * 每块是单独的gzip member, 定位后只解压命中的块
+     */
+    private void searchMembers(File file, boolean binary, List<TraceIndex.Block> blocks, List<Match> matches)
+            throws IOException {
+        try (FileInputStream raw = new FileInputStream(file)) {
+            InputStream nonClosing = new FilterInputStream(raw) {
+                @Override
+                public void close() {
+                }
+            };
+            for (TraceIndex.Block block : blocks) {
+                raw.getChannel().position(block.compressedOffset);
+                try (InputStream in = new GZIPInputStream(new BufferedInputStream(nonClosing, 64 * 1024), 64 * 1024)) {
+                    scan(file, new LimitedInputStream(in, block.length), binary, matches);
+                }
+            }
+        }
+    }
+
+    private void scan(File file, InputStream in, boolean binary, List<Match> matches) throws IOException {
+        if (binary) {
+            scanBinary(file, in, matches);
+        } else {
+            scanText(file, in, matches);
+        }
+    }
+
+    private void scanText(File file, InputStream in, List<Match> matches) throws IOException {
+        TraceIndex.LineScanner lines = new TraceIndex.LineScanner(in);
+        TraceIndex.TimeParser timeParser = new TraceIndex.TimeParser();
+        StringBuilder current = null;
+        long time = 0;
+        while (lines.next()) {
+            byte[] buf = lines.buf;
+            int tsLength = TraceIndex.timestampLength(buf, lines.start, lines.length);
+            if (tsLength == 0) {
+                //多行返回值的续行
+                if (current != null) {
+                    current.append('\n').append(new String(buf, lines.start, lines.length, StandardCharsets.UTF_8));
+                }
+                continue;
+            }
+            if (current != null) {
+                matches.add(new Match(time, file, current.toString()));
+                current = null;
+            }
+            int idStart = lines.start + tsLength + 3;
+            int idEnd = TraceIndex.traceIdEnd(buf, lines.start, lines.length, tsLength);
+            if (idEnd - idStart != traceIdBytes.length || !equals(buf, idStart, traceIdBytes)) {
+                continue;
+            }
+            time = timeParser.parse(buf, lines.start, tsLength);
+            if (time >= from && time <= to) {
+                current = new StringBuilder(new String(buf, lines.start, lines.length, StandardCharsets.UTF_8));
+            }
+        }
+        if (current != null) {
+            matches.add(new Match(time, file, current.toString()));
+        }
+        scannedBytes += lines.position;
+    }
+
+    private void scanBinary(File file, InputStream in, List<Match> matches) throws IOException {
+        BinaryLogReader reader = new BinaryLogReader(in);
+        StringBuilder sb = new StringBuilder(512);
+        BinaryLogRecord record;
+        while ((record = reader.next()) != null) {
+            if (!record.isAccess() || !traceId.equals(record.getTraceId())
+                    || record.getTime() < from || record.getTime() > to) {
+                continue;
+            }
+            sb.setLength(0);
+            (reader.isMillis() ? millisTimestamp : timestamp).appendTo(record.getTime(), sb);
+            sb.append(": ");
+            record.render(sb);
+            matches.add(new Match(record.getTime(), file, sb.toString()));
+        }
+        scannedBytes += reader.getPosition();
+    }
+
+    private static boolean equals(byte[] buf, int offset, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (buf[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    /***
+     * 读取的未压缩字节数
+     */
+    public long getScannedBytes() {
+        return scannedBytes;
+    }
+
+    /***
+     * 使用索引的文件数
+     */
+    public int getIndexedFiles() {
+        return indexedFiles;
+    }
+
+    /***
+     * 没有索引而顺序扫描的文件数
+     */
+    public int getScannedFiles() {
+        return scannedFiles;
+    }
+
+    /**
+     * 查找到的一条记录
+     */
+    public static final class Match {
+        private final long time;
+        private final File file;
+        private final String text;
+
+        Match(long time, File file, String text) {
+            this.time = time;
+            this.file = file;
+            this.text = text;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /***
+         * 与文本日志相同的一行(返回值可能跨多行), 含时间前缀
+         */
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * 只读取一个块的数据
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private static long parseTime(String value) {
+        return LocalDateTime.parse(value, DATE_TIME).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> positional = new ArrayList<String>();
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        for (int i = 0; i < args.length; i++) {
+            if ("--from".equals(args[i]) && i + 1 < args.length) {
+                from = parseTime(args[++i]);
+            } else if ("--to".equals(args[i]) && i + 1 < args.length) {
+                //精确到秒, 包含该秒内的记录
+                to = parseTime(args[++i]) + 999;
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        if (positional.size() < 2) {
+            System.err.println("usage: TraceSearch dir traceId [namePrefix] [--from \"yyyy-MM-dd HH:mm:ss\"] "
+                    + "[--to \"yyyy-MM-dd HH:mm:ss\"]");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        File dir = new File(positional.get(0));
+        TraceSearch search = new TraceSearch(positional.get(1), from, to);
+        List<Match> matches = search.search(logFiles(dir, positional.size() > 2 ? positional.get(2) : null));
+        for (Match match : matches) {
+            System.out.println(match.getText());
+        }
+        System.err.println(matches.size() + " records, " + search.getIndexedFiles() + " indexed files, "
+                + search.getScannedFiles() + " scanned files, " + search.getScannedBytes() + " bytes read, "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}
@@ -0,0 +1,40 @@
+package com.msj.dubbo.spi.extension.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Description: 128位traceId, 高64位为毫秒时间和节点随机数, 低64位为线程本地随机数, 输出32位小写十六进制;
+ * 不经过SecureRandom, 不会因熵不足阻塞
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class FastTraceIdGenerator implements TraceIdGenerator {
+
+    public static final String NAME = "fast";
+
+    private static final int NODE_BITS = 20;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 进程启动时确定, 区分同一毫秒内的不同进程
+     */
+    private static final long NODE = (ThreadLocalRandom.current().nextLong() ^ System.nanoTime()) & ((1L << NODE_BITS) - 1);
+
+    @Override
+    public String generate() {
+        long high = (System.currentTimeMillis() << NODE_BITS) | NODE;
+        long low = ThreadLocalRandom.current().nextLong();
+        char[] chars = new char[32];
+        writeHex(high, chars, 0);
+        writeHex(low, chars, 16);
+        return new String(chars);
+    }
+
+    private static void writeHex(long value, char[] chars, int offset) {
+        for (int i = offset + 15; i >= offset; i--) {
+            chars[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.msj.dubbo.spi.extension.trace;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Description: 一次调用所在的链路上下文, 包含traceId、spanId、父spanId和采样标记, 不可变.
+ * 跨进程时编码为W3C traceparent格式的附件, 进程内通过线程变量传递
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public final class TraceContext {
+
+    /**
+     * 随调用传递的附件名, 值为 00-{traceId}-{spanId}-{flags}
+     */
+    public static final String TRACE_PARENT = "traceparent";
+
+    /**
+     * 当前调用的上下文在RpcContext中的key, 供同一调用中的其他filter读取
+     */
+    public static final String RPC_CONTEXT_KEY = "dubbo.traceContext";
+
+    /**
+     * MDC中的spanId, 日志pattern中可以使用 %X{spanId}
+     */
+    public static final String LOG_SPAN_ID = "spanId";
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int TRACE_PARENT_LENGTH = 55;
+
+    private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<TraceContext>();
+
+    private final String traceId;
+
+    private final String spanId;
+
+    private final String parentSpanId;
+
+    private final boolean sampled;
+
+    /**
+     * traceparent中使用的32位十六进制traceId, traceId格式不支持时为null; 子span直接沿用, 不再重复校验
+     */
+    private final String hexTraceId;
+
+    public TraceContext(String traceId, String spanId, String parentSpanId, boolean sampled) {
+        this(traceId, spanId, parentSpanId, sampled, hexTraceId(traceId));
+    }
+
+    private TraceContext(String traceId, String spanId, String parentSpanId, boolean sampled, String hexTraceId) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.sampled = sampled;
+        this.hexTraceId = hexTraceId;
+    }
+
+    /***
+     * 新链路的第一个span
+     */
+    public static TraceContext newRoot(String traceId) {
+        return new TraceContext(traceId, newSpanId(), null, true);
+    }
+
+    /***
+     * 以当前span为父span的新span
+     */
+    public TraceContext newChild() {
+        return new TraceContext(traceId, newSpanId(), spanId, sampled, hexTraceId);
+    }
+
+    /***
+     * 当前线程的上下文, 没有时返回null
+     */
+    public static TraceContext current() {
+        return CURRENT.get();
+    }
+
+    public static void setCurrent(TraceContext context) {
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
+
+    /***
+     * 编码为traceparent, traceId不是32位或UUID格式的十六进制、spanId不是16位时返回null
+     */
+    public String toTraceParent() {
+        if (hexTraceId == null || spanId == null || spanId.length() != 16) {
+            return null;
+        }
+        //按固定位置直接填充单字节字符, 不经过StringBuilder
+        byte[] bytes = new byte[TRACE_PARENT_LENGTH];
+        bytes[0] = '0';
+        bytes[1] = '0';
+        bytes[2] = '-';
+        copyAscii(hexTraceId, 32, bytes, 3);
+        bytes[35] = '-';
+        copyAscii(spanId, 16, bytes, 36);
+        bytes[52] = '-';
+        bytes[53] = '0';
+        bytes[54] = (byte) (sampled ? '1' : '0');
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /***
+     * 解析上游的traceparent, 返回上游的span, 格式不正确时返回null
+     * @param traceParent   traceparent附件
+     * @param traceId   上游传递的traceId, 不为空时优先使用, 保持与MDC中的traceId一致
+     */
+    public static TraceContext parse(String traceParent, String traceId) {
+        if (traceParent == null || traceParent.length() < TRACE_PARENT_LENGTH
+                || traceParent.charAt(2) != '-' || traceParent.charAt(35) != '-' || traceParent.charAt(52) != '-'
+                || !isHex(traceParent, 0, 2) || traceParent.startsWith("ff")
+                || !isHex(traceParent, 3, 35) || !isHex(traceParent, 36, 52) || !isHex(traceParent, 53, 55)
+                || isZero(traceParent, 3, 35) || isZero(traceParent, 36, 52)) {
+            return null;
+        }
+        //版本00只有4段, 更高版本可能在后面追加字段
+        if (traceParent.length() > TRACE_PARENT_LENGTH
+                && (traceParent.startsWith("00") || traceParent.charAt(TRACE_PARENT_LENGTH) != '-')) {
+            return null;
+        }
+        int flags = Character.digit(traceParent.charAt(54), 16);
+        String id;
+        String hex;
+        if (traceId == null || traceId.isEmpty()) {
+            id = hex = traceParent.substring(3, 35);
+        } else {
+            id = traceId;
+            //上游的traceId附件通常与traceparent一致, 一致时不需要重新校验
+            hex = traceId.length() == 32 && traceParent.regionMatches(3, traceId, 0, 32) ? traceId : hexTraceId(traceId);
+        }
+        return new TraceContext(id, traceParent.substring(36, 52), null, (flags & 1) != 0, hex);
+    }
+
+    public static String newSpanId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        byte[] bytes = new byte[16];
+        for (int i = 15; i >= 0; i--) {
+            bytes[i] = HEX[(int) (id & 0xF)];
+            id >>>= 4;
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void copyAscii(String s, int length, byte[] bytes, int offset) {
+        for (int i = 0; i < length; i++) {
+            bytes[offset + i] = (byte) s.charAt(i);
+        }
+    }
+
+    private static String hexTraceId(String traceId) {
+        if (traceId == null) {
+            return null;
+        }
+        if (traceId.length() == 32 && isHex(traceId, 0, 32)) {
+            return traceId;
+        }
+        if (traceId.length() == 36 && traceId.charAt(8) == '-' && traceId.charAt(13) == '-'
+                && traceId.charAt(18) == '-' && traceId.charAt(23) == '-') {
+            String hex = traceId.replace("-", "");
+            return hex.length() == 32 && isHex(hex, 0, 32) ? hex : null;
+        }
+        return null;
+    }
+
+    /***
+     * 是否为小写十六进制
+     */
+    private static boolean isHex(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    /***
+     * 父spanId, 链路的第一个span为null
+     */
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    @Override
+    public String toString() {
+        return traceId + "," + spanId + "," + (parentSpanId == null ? "" : parentSpanId);
+    }
+}
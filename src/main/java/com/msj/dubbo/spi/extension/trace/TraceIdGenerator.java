@@ -0,0 +1,17 @@
+package com.msj.dubbo.spi.extension.trace;
+
+import org.apache.dubbo.common.extension.SPI;
+
+/**
+ * @Description: traceId生成器扩展点, 默认为fast, 可通过系统属性 dubbo.traceid.generator 指定其他实现
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+@SPI(FastTraceIdGenerator.NAME)
+public interface TraceIdGenerator {
+
+    /***
+     * 生成一个新的traceId, 实现需要线程安全
+     */
+    String generate();
+}
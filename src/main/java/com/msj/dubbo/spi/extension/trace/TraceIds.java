@@ -0,0 +1,51 @@
+package com.msj.dubbo.spi.extension.trace;
+
+import org.apache.dubbo.common.extension.ExtensionLoader;
+import org.apache.dubbo.common.utils.StringUtils;
+
+/**
+ * @Description: 进程内使用的traceId生成器, 首次使用时通过SPI加载
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public final class TraceIds {
+
+    public static final String GENERATOR_PROPERTY = "dubbo.traceid.generator";
+
+    private static volatile TraceIdGenerator generator;
+
+    private TraceIds() {
+    }
+
+    /***
+     * 生成一个新的traceId
+     */
+    public static String generate() {
+        return generator().generate();
+    }
+
+    public static TraceIdGenerator generator() {
+        TraceIdGenerator current = generator;
+        if (current == null) {
+            current = load();
+            generator = current;
+        }
+        return current;
+    }
+
+    /***
+     * 替换生成器, 主要用于不经过SPI的场景
+     */
+    public static void setGenerator(TraceIdGenerator traceIdGenerator) {
+        generator = traceIdGenerator;
+    }
+
+    private static TraceIdGenerator load() {
+        ExtensionLoader<TraceIdGenerator> loader = ExtensionLoader.getExtensionLoader(TraceIdGenerator.class);
+        String name = System.getProperty(GENERATOR_PROPERTY);
+        if (StringUtils.isBlank(name)) {
+            return loader.getDefaultExtension();
+        }
+        return loader.getExtension(name.trim());
+    }
+}
@@ -0,0 +1,107 @@
+package com.msj.dubbo.spi.extension.trace;
+
+import com.msj.dubbo.spi.extension.util.ThreadMdcUtil;
+import org.apache.dubbo.rpc.RpcContext;
+import org.slf4j.MDC;
+
+import java.util.Arrays;
+
+/**
+ * @Description: 在当前线程上安装链路上下文, 结束时恢复为安装前的状态, 避免线程池中的线程残留上一个请求的traceId.
+ * 每个线程复用一个对象, 用数组保存嵌套调用(如injvm)时被覆盖的值, 不需要为每次调用分配对象
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public final class TraceScope {
+
+    private static final ThreadLocal<TraceScope> SCOPES = ThreadLocal.withInitial(TraceScope::new);
+
+    private static final int INITIAL_DEPTH = 4;
+
+    private String[] traceIds = new String[INITIAL_DEPTH];
+
+    private String[] spanIds = new String[INITIAL_DEPTH];
+
+    private TraceContext[] contexts = new TraceContext[INITIAL_DEPTH];
+
+    private String[] attachments = new String[INITIAL_DEPTH];
+
+    private Object[] rpcValues = new Object[INITIAL_DEPTH];
+
+    private int depth;
+
+    private TraceScope() {
+    }
+
+    /***
+     * 保存当前线程的MDC、TraceContext和RpcContext中的链路信息, 再安装新的span; 必须在finally中调用 {@link #close()}
+     * @param span  本次调用的span
+     * @return 当前线程的scope
+     */
+    public static TraceScope open(TraceContext span) {
+        TraceScope scope = SCOPES.get();
+        scope.push(span);
+        return scope;
+    }
+
+    private void push(TraceContext span) {
+        if (depth == traceIds.length) {
+            int length = depth * 2;
+            traceIds = Arrays.copyOf(traceIds, length);
+            spanIds = Arrays.copyOf(spanIds, length);
+            contexts = Arrays.copyOf(contexts, length);
+            attachments = Arrays.copyOf(attachments, length);
+            rpcValues = Arrays.copyOf(rpcValues, length);
+        }
+        RpcContext rpcContext = RpcContext.getContext();
+        traceIds[depth] = ThreadMdcUtil.getTraceId();
+        spanIds[depth] = ThreadMdcUtil.getSpanId();
+        contexts[depth] = TraceContext.current();
+        attachments[depth] = rpcContext.getAttachment(ThreadMdcUtil.LOG_TRACE_ID);
+        rpcValues[depth] = rpcContext.get(TraceContext.RPC_CONTEXT_KEY);
+        depth++;
+
+        ThreadMdcUtil.setTraceId(span.getTraceId());
+        ThreadMdcUtil.setSpanId(span.getSpanId());
+        TraceContext.setCurrent(span);
+        rpcContext.setAttachment(ThreadMdcUtil.LOG_TRACE_ID, span.getTraceId());
+        rpcContext.set(TraceContext.RPC_CONTEXT_KEY, span);
+    }
+
+    /***
+     * 恢复为open之前的状态
+     */
+    public void close() {
+        if (depth == 0) {
+            return;
+        }
+        depth--;
+        restoreMdc(ThreadMdcUtil.LOG_TRACE_ID, traceIds[depth]);
+        restoreMdc(TraceContext.LOG_SPAN_ID, spanIds[depth]);
+        TraceContext.setCurrent(contexts[depth]);
+        RpcContext rpcContext = RpcContext.getContext();
+        if (attachments[depth] == null) {
+            rpcContext.removeAttachment(ThreadMdcUtil.LOG_TRACE_ID);
+        } else {
+            rpcContext.setAttachment(ThreadMdcUtil.LOG_TRACE_ID, attachments[depth]);
+        }
+        if (rpcValues[depth] == null) {
+            rpcContext.remove(TraceContext.RPC_CONTEXT_KEY);
+        } else {
+            rpcContext.set(TraceContext.RPC_CONTEXT_KEY, rpcValues[depth]);
+        }
+        traceIds[depth] = null;
+        spanIds[depth] = null;
+        contexts[depth] = null;
+        attachments[depth] = null;
+        rpcValues[depth] = null;
+    }
+
+    private static void restoreMdc(String key, String value) {
+        if (value == null) {
+            MDC.remove(key);
+        } else {
+            MDC.put(key, value);
+        }
+    }
+}
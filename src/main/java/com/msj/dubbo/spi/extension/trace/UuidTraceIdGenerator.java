@@ -0,0 +1,18 @@
+package com.msj.dubbo.spi.extension.trace;
+
+import java.util.UUID;
+
+/**
+ * @Description: 使用UUID.randomUUID()的traceId, 与旧版本格式相同
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class UuidTraceIdGenerator implements TraceIdGenerator {
+
+    public static final String NAME = "uuid";
+
+    @Override
+    public String generate() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.msj.dubbo.spi.extension.util;
+
+/**
+ * @Description: 固定大小的布隆过滤器, 元素由调用方先哈希为64位, 按双重哈希取k个位
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public final class BloomFilter {
+
+    /**
+     * 每个元素10位, k=7时误判率约1%
+     */
+    private static final int BITS_PER_ELEMENT = 10;
+
+    private static final int DEFAULT_HASHES = 7;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final byte[] bits;
+
+    private final int hashes;
+
+    /**
+     * 位数减1, 位数为2的幂
+     */
+    private final long mask;
+
+    /***
+     * @param expectedElements  预计的元素数
+     */
+    public BloomFilter(int expectedElements) {
+        this(new byte[bytesFor(expectedElements)], DEFAULT_HASHES);
+    }
+
+    /***
+     * 从 {@link #toByteArray()} 的结果恢复
+     * @param bits  位数组, 长度为2的幂
+     * @param hashes    哈希函数个数
+     */
+    public BloomFilter(byte[] bits, int hashes) {
+        if (bits.length == 0 || (bits.length & (bits.length - 1)) != 0) {
+            throw new IllegalArgumentException("bits length must be a power of 2: " + bits.length);
+        }
+        this.bits = bits;
+        this.hashes = hashes;
+        this.mask = bits.length * 8L - 1;
+    }
+
+    private static int bytesFor(int expectedElements) {
+        long bytes = Math.max(8, (long) expectedElements * BITS_PER_ELEMENT / 8);
+        int size = 8;
+        while (size < bytes && size < (1 << 24)) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    public void add(long hash) {
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            bits[(int) (bit >>> 3)] |= (byte) (1 << (bit & 7));
+        }
+    }
+
+    /***
+     * 可能包含时返回true, 返回false时一定不包含
+     */
+    public boolean mightContain(long hash) {
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            if ((bits[(int) (bit >>> 3)] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public byte[] toByteArray() {
+        return bits;
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    /***
+     * 64位FNV-1a哈希, 再做一次混合使高低位都均匀
+     */
+    public static long hash(byte[] bytes, int offset, int length) {
+        long h = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= bytes[i] & 0xFF;
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,148 @@
+package com.msj.dubbo.spi.extension.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.TimeZone;
+
+/**
+ * @Description: yyyy-MM-dd HH:mm:ss[.SSS] 格式化, 按秒缓存字符和字节, 同一秒内不再计算和分配,
+ * 毫秒部分按算术追加. 非线程安全, 每个日志线程持有自己的实例
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public final class CachedTimestamp {
+
+    private static final int SECOND_LENGTH = 19;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private final TimeZone timeZone;
+
+    private final boolean millis;
+
+    private final byte[] bytes;
+
+    private final char[] chars;
+
+    private long cachedSecond = Long.MIN_VALUE;
+
+    private long cachedDay = Long.MIN_VALUE;
+
+    private String cachedString;
+
+    /***
+     * @param millis    是否输出毫秒
+     */
+    public CachedTimestamp(boolean millis) {
+        this(TimeZone.getDefault(), millis);
+    }
+
+    public CachedTimestamp(TimeZone timeZone, boolean millis) {
+        this.timeZone = timeZone;
+        this.millis = millis;
+        this.bytes = new byte[length()];
+        this.chars = new char[length()];
+    }
+
+    /***
+     * 格式化后的长度
+     */
+    public int length() {
+        return millis ? SECOND_LENGTH + 4 : SECOND_LENGTH;
+    }
+
+    /***
+     * 写入字节, dst剩余空间需不小于length()
+     */
+    public void writeTo(long time, ByteBuffer dst) {
+        update(time);
+        dst.put(bytes, 0, length());
+    }
+
+    public void writeTo(long time, Writer writer) throws IOException {
+        update(time);
+        writer.write(chars, 0, length());
+    }
+
+    public void appendTo(long time, StringBuilder sb) {
+        update(time);
+        sb.append(chars, 0, length());
+    }
+
+    /***
+     * 按秒精度时同一秒返回同一个String实例
+     */
+    public String format(long time) {
+        update(time);
+        if (!millis) {
+            if (cachedString == null) {
+                cachedString = new String(chars, 0, SECOND_LENGTH);
+            }
+            return cachedString;
+        }
+        return new String(chars, 0, length());
+    }
+
+    private void update(long time) {
+        long second = Math.floorDiv(time, 1000L);
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedString = null;
+            long local = time + timeZone.getOffset(time);
+            long day = Math.floorDiv(local, MILLIS_PER_DAY);
+            if (day != cachedDay) {
+                cachedDay = day;
+                formatDate(day);
+            }
+            int secondOfDay = (int) (Math.floorMod(local, MILLIS_PER_DAY) / 1000);
+            put2(11, secondOfDay / 3600);
+            put2(14, secondOfDay / 60 % 60);
+            put2(17, secondOfDay % 60);
+        }
+        if (millis) {
+            int ms = (int) Math.floorMod(time, 1000L);
+            put(20, '0' + ms / 100);
+            put(21, '0' + ms / 10 % 10);
+            put(22, '0' + ms % 10);
+        }
+    }
+
+    /***
+     * 由1970-01-01起的天数计算年月日, 算法见 Howard Hinnant, "chrono-Compatible Low-Level Date Algorithms"
+     */
+    private void formatDate(long days) {
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+        put(0, '0' + year / 1000 % 10);
+        put(1, '0' + year / 100 % 10);
+        put2(2, year % 100);
+        put(4, '-');
+        put2(5, month);
+        put(7, '-');
+        put2(8, day);
+        put(10, ' ');
+        put(13, ':');
+        put(16, ':');
+        if (millis) {
+            put(19, '.');
+        }
+    }
+
+    private void put2(int index, int value) {
+        put(index, '0' + value / 10);
+        put(index + 1, '0' + value % 10);
+    }
+
+    private void put(int index, int c) {
+        bytes[index] = (byte) c;
+        chars[index] = (char) c;
+    }
+}
@@ -0,0 +1,189 @@
+package com.msj.dubbo.spi.extension.util;
+
+import com.msj.dubbo.spi.extension.trace.TraceContext;
+import org.slf4j.MDC;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+/**
+ * @Description: 提交任务时线程上下文(MDC和TraceContext)的不可变快照, 按引用传给工作线程.
+ * MDC中只有traceId/spanId时只保存这两个值, 不复制map; 同一线程上下文未变化时复用上一次的快照
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public final class ContextSnapshot {
+
+    /**
+     * 空上下文
+     */
+    public static final ContextSnapshot EMPTY = new ContextSnapshot(null, null, null, null);
+
+    private static final ThreadLocal<ContextSnapshot> LAST = new ThreadLocal<ContextSnapshot>();
+
+    private final String traceId;
+
+    private final String spanId;
+
+    private final TraceContext context;
+
+    /**
+     * MDC中还有其他key时的完整副本, 否则为null
+     */
+    private final Map<String, String> mdc;
+
+    private ContextSnapshot(String traceId, String spanId, TraceContext context, Map<String, String> mdc) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.context = context;
+        this.mdc = mdc;
+    }
+
+    /***
+     * 当前线程上下文的快照
+     */
+    public static ContextSnapshot capture() {
+        String traceId;
+        String spanId;
+        Map<String, String> mdc = null;
+        Hashtable<?, ?> log4jContext = Log4jMdc.context();
+        if (log4jContext != null) {
+            boolean others;
+            //Hashtable的方法都同步在自身上, 外层先持有锁, 内部的多次调用只是重入
+            synchronized (log4jContext) {
+                traceId = Log4jMdc.get(log4jContext, ThreadMdcUtil.LOG_TRACE_ID);
+                spanId = Log4jMdc.get(log4jContext, TraceContext.LOG_SPAN_ID);
+                others = log4jContext.size() != (traceId == null ? 0 : 1) + (spanId == null ? 0 : 1);
+            }
+            if (others) {
+                mdc = MDC.getCopyOfContextMap();
+            }
+        } else if (Log4jMdc.AVAILABLE) {
+            traceId = null;
+            spanId = null;
+        } else {
+            traceId = MDC.get(ThreadMdcUtil.LOG_TRACE_ID);
+            spanId = MDC.get(TraceContext.LOG_SPAN_ID);
+            mdc = MDC.getCopyOfContextMap();
+            if (mdc != null && mdc.isEmpty()) {
+                mdc = null;
+            }
+        }
+        TraceContext context = TraceContext.current();
+        if (mdc == null) {
+            if (traceId == null && spanId == null && context == null) {
+                return EMPTY;
+            }
+            ContextSnapshot last = LAST.get();
+            if (last != null && last.traceId == traceId && last.spanId == spanId && last.context == context) {
+                return last;
+            }
+        }
+        ContextSnapshot snapshot = new ContextSnapshot(traceId, spanId, context, mdc);
+        if (mdc == null) {
+            LAST.set(snapshot);
+        }
+        return snapshot;
+    }
+
+    /***
+     * 由MDC map构造快照, 兼容旧的 {@link ThreadMdcUtil#wrap(Runnable, Map)}
+     */
+    public static ContextSnapshot of(Map<String, String> mdc) {
+        if (mdc == null || mdc.isEmpty()) {
+            return EMPTY;
+        }
+        return new ContextSnapshot(mdc.get(ThreadMdcUtil.LOG_TRACE_ID), mdc.get(TraceContext.LOG_SPAN_ID), null,
+                Collections.unmodifiableMap(new HashMap<String, String>(mdc)));
+    }
+
+    /***
+     * 把快照安装到当前线程, 替换当前线程原有的MDC和TraceContext
+     */
+    public void install() {
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        } else {
+            Hashtable<?, ?> log4jContext = Log4jMdc.context();
+            if (log4jContext != null) {
+                Log4jMdc.replace(log4jContext, traceId, spanId);
+            } else {
+                if (!Log4jMdc.AVAILABLE) {
+                    MDC.clear();
+                }
+                put(ThreadMdcUtil.LOG_TRACE_ID, traceId);
+                put(TraceContext.LOG_SPAN_ID, spanId);
+            }
+        }
+        TraceContext.setCurrent(context);
+    }
+
+    private static void put(String key, String value) {
+        if (value == null) {
+            MDC.remove(key);
+        } else {
+            MDC.put(key, value);
+        }
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * slf4j-log4j12时直接读取log4j当前线程的MDC, 不复制
+     */
+    private static final class Log4jMdc {
+        private static final boolean AVAILABLE = detect();
+
+        private static boolean detect() {
+            try {
+                return MDC.getMDCAdapter() != null
+                        && "org.slf4j.impl.Log4jMDCAdapter".equals(MDC.getMDCAdapter().getClass().getName())
+                        && org.apache.log4j.MDC.class != null;
+            } catch (Throwable t) {
+                return false;
+            }
+        }
+
+        /***
+         * log4j当前线程的MDC, 未使用log4j或当前线程还没有MDC时返回null
+         */
+        static Hashtable<?, ?> context() {
+            return AVAILABLE ? org.apache.log4j.MDC.getContext() : null;
+        }
+
+        static String get(Hashtable<?, ?> context, String key) {
+            Object value = context.get(key);
+            return value instanceof String ? (String) value : null;
+        }
+
+        /***
+         * 把MDC替换为只有traceId和spanId, 与log4j的MDC.put一样直接修改当前线程的Hashtable
+         */
+        @SuppressWarnings("unchecked")
+        static void replace(Hashtable<?, ?> context, String traceId, String spanId) {
+            Hashtable<Object, Object> table = (Hashtable<Object, Object>) context;
+            synchronized (table) {
+                set(table, ThreadMdcUtil.LOG_TRACE_ID, traceId);
+                set(table, TraceContext.LOG_SPAN_ID, spanId);
+                //还有其他key时清空后重新放入, 通常只有这两个key
+                if (table.size() != (traceId == null ? 0 : 1) + (spanId == null ? 0 : 1)) {
+                    table.clear();
+                    set(table, ThreadMdcUtil.LOG_TRACE_ID, traceId);
+                    set(table, TraceContext.LOG_SPAN_ID, spanId);
+                }
+            }
+        }
+
+        private static void set(Hashtable<Object, Object> table, String key, String value) {
+            if (value == null) {
+                table.remove(key);
+            } else {
+                table.put(key, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.msj.dubbo.spi.extension.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description: 无锁的对数-线性分桶直方图(思路同HdrHistogram), 每个2的幂区间分32个子桶, 相对误差约3%,
+ * 记录只需一次原子自增
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * 可记录的最大值为2^MAX_BITS-1, 超过的按最大值记录; 以微秒计约19小时
+     */
+    private static final int MAX_BITS = 36;
+
+    private static final int BUCKETS = (MAX_BITS - SUB_BITS) * SUB_COUNT + SUB_COUNT;
+
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /***
+     * 记录一个值, 负数按0记录
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        counts.getAndIncrement(index(value));
+        sum.add(value);
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    static int index(long value) {
+        if (value < 2 * SUB_COUNT) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return exp * SUB_COUNT + (int) (value >>> exp);
+    }
+
+    /***
+     * 桶内的最大值
+     */
+    static long highestEquivalent(int index) {
+        if (index < 2 * SUB_COUNT) {
+            return index;
+        }
+        int exp = index / SUB_COUNT - 1;
+        long mantissa = index % SUB_COUNT + SUB_COUNT;
+        return ((mantissa + 1) << exp) - 1;
+    }
+
+    /***
+     * 当前累计值的快照, 与记录并发时各桶之间不保证严格一致
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    /**
+     * 直方图快照
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /***
+         * 累计快照的最大值; 区间快照(minus)中为区间内最大值所在桶的上界
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /***
+         * 百分位值
+         * @param percentile    0-100, 如99.9
+         * @return 所在桶的上界, 无数据时返回0
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(highestEquivalent(i), max);
+                }
+            }
+            return max;
+        }
+
+        /***
+         * 两次累计快照之差, 得到区间内的分布
+         * @param previous  较早的快照, 为null时返回自身
+         */
+        public Snapshot minus(Snapshot previous) {
+            if (previous == null) {
+                return this;
+            }
+            long[] diff = new long[counts.length];
+            long diffCount = 0;
+            int highest = -1;
+            for (int i = 0; i < counts.length; i++) {
+                diff[i] = Math.max(0, counts[i] - previous.counts[i]);
+                diffCount += diff[i];
+                if (diff[i] > 0) {
+                    highest = i;
+                }
+            }
+            long diffMax = highest < 0 ? 0 : Math.min(highestEquivalent(highest), max);
+            return new Snapshot(diff, diffCount, Math.max(0, sum - previous.sum), diffMax);
+        }
+    }
+}
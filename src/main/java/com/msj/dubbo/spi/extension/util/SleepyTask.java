@@ -1,11 +1,16 @@
 package com.msj.dubbo.spi.extension.util;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * @Description: 实现抽象可休眠的任务，避免浪费cpu
+ * @Description: 实现抽象可休眠的任务，避免浪费cpu.
+ * 默认每次唤醒时提交到线程池执行; 指定WaitStrategy时使用一个常驻消费线程, 空闲时按策略等待, 生产者只在消费线程park时唤醒
  * @Author: Vincent.M mengshaojie@188.com
  * @Date 2018/7/30 下午8:03
  * @Version: 1.0.0
@@ -16,26 +21,91 @@ public abstract class SleepyTask implements Runnable {
     private final AtomicBoolean running = new AtomicBoolean(false);
     protected final Executor executor;
 
+    /**
+     * 常驻消费线程的等待策略, 为null时使用executor
+     */
+    private final WaitStrategy waitStrategy;
+    private final ThreadFactory threadFactory;
+    private final AtomicBoolean parked = new AtomicBoolean(false);
+    private volatile Thread consumer;
+    private volatile boolean stopped;
+
     public SleepyTask() {
         this(Executors.newCachedThreadPool());
     }
 
     public SleepyTask(Executor executor) {
         this.executor = executor;
+        this.waitStrategy = null;
+        this.threadFactory = null;
+    }
+
+    /***
+     * @param threadFactory 消费线程
+     * @param waitStrategy  为null时使用单线程的线程池
+     */
+    public SleepyTask(ThreadFactory threadFactory, WaitStrategy waitStrategy) {
+        this.executor = waitStrategy == null ? Executors.newSingleThreadExecutor(threadFactory) : null;
+        this.waitStrategy = waitStrategy;
+        this.threadFactory = threadFactory;
     }
 
     @Override
     public final void run() {
-        try {
-            while (should.compareAndSet(true, false)) {
+        if (waitStrategy != null) {
+            loop();
+            return;
+        }
+        do {
+            try {
+                while (should.compareAndSet(true, false)) {
+                    try {
+                        runTask();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            } finally {
+                running.set(false);
+            }
+            //退出前有新的唤醒时, running仍为true的生产者不会提交任务, 这里接着执行
+        } while (should.get() && running.compareAndSet(false, true));
+    }
+
+    private void loop() {
+        int idle = 0;
+        while (!stopped) {
+            if (should.get()) {
+                should.set(false);
                 try {
                     runTask();
                 } catch (RuntimeException e) {
                     e.printStackTrace();
                 }
+                idle = 0;
+                continue;
+            }
+            if (idle < waitStrategy.spins) {
+                idle++;
+                continue;
             }
-        } finally {
-            running.set(false);
+            if (idle < waitStrategy.spins + waitStrategy.yields) {
+                idle++;
+                Thread.yield();
+                continue;
+            }
+            if (!waitStrategy.isSignalled()) {
+                LockSupport.parkNanos(this, waitStrategy.parkNanos);
+                continue;
+            }
+            parked.set(true);
+            //与生产者先写should再读parked配对, 避免丢失唤醒
+            if (should.get() || stopped) {
+                parked.set(false);
+                continue;
+            }
+            LockSupport.park(this);
+            parked.set(false);
         }
     }
 
@@ -44,14 +114,62 @@ public abstract class SleepyTask implements Runnable {
      * @return boolean
      */
     public boolean weakUp() {
-        should.set(true);
-        if (running.compareAndSet(false, true)) {
-            executor.execute(this);
+        if (waitStrategy == null) {
+            should.set(true);
+            if (running.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    //已经stop, 剩余的任务由调用stop的一方处理
+                    running.set(false);
+                    return false;
+                }
+                return true;
+            }
+            return false;
+        }
+        //消费线程忙时should已为true, 只读不写
+        if (!should.get()) {
+            should.set(true);
+        }
+        Thread thread = consumer;
+        if (thread == null) {
+            return startConsumer();
+        }
+        if (parked.get() && parked.compareAndSet(true, false)) {
+            LockSupport.unpark(thread);
             return true;
         }
         return false;
     }
 
+    private synchronized boolean startConsumer() {
+        if (consumer != null || stopped) {
+            return false;
+        }
+        Thread thread = threadFactory.newThread(this);
+        consumer = thread;
+        thread.start();
+        return true;
+    }
+
+    /***
+     * 停止线程池或消费线程, 已在队列中的任务由调用方处理
+     */
+    protected void stop() {
+        if (waitStrategy == null) {
+            if (executor instanceof ExecutorService) {
+                ((ExecutorService) executor).shutdown();
+            }
+            return;
+        }
+        stopped = true;
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
     /***
      * 子类应该实现此方法
      */
@@ -6,12 +6,18 @@
  */
 package com.msj.dubbo.spi.extension.util;
 
+import com.msj.dubbo.spi.extension.trace.TraceContext;
+import com.msj.dubbo.spi.extension.trace.TraceIds;
+import org.apache.dubbo.common.utils.NamedThreadFactory;
 import org.slf4j.MDC;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.concurrent.ListenableFuture;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.*;
 
 /**
@@ -21,6 +27,8 @@ public class ThreadMdcUtil {
 
     public final static String LOG_TRACE_ID = "traceId";
 
+    private static final Executor COMMON_POOL_EXECUTOR = new ContextExecutor(ForkJoinPool.commonPool());
+
     public static void setTraceIdIfAbsent() {
         if (MDC.get(LOG_TRACE_ID) == null) {
             MDC.put(LOG_TRACE_ID, getTraceStr());
@@ -28,7 +36,7 @@ public class ThreadMdcUtil {
     }
 
     private static String getTraceStr() {
-        return UUID.randomUUID().toString();
+        return TraceIds.generate();
     }
 
     public static String getTraceId() {
@@ -43,34 +51,51 @@ public class ThreadMdcUtil {
         MDC.put(LOG_TRACE_ID, traceId);
     }
 
+    public static String getSpanId() {
+        return MDC.get(TraceContext.LOG_SPAN_ID);
+    }
+
+    public static void setSpanId(String spanId) {
+        MDC.put(TraceContext.LOG_SPAN_ID, spanId);
+    }
+
     public static <T> Callable<T> wrap(final Callable<T> callable, final Map<String, String> context) {
+        return wrap(callable, ContextSnapshot.of(context));
+    }
+
+    public static Runnable wrap(final Runnable runnable, final Map<String, String> context) {
+        return wrap(runnable, ContextSnapshot.of(context));
+    }
+
+    /***
+     * 在工作线程中安装提交时的上下文, 执行结束后恢复工作线程原有的上下文
+     */
+    public static <T> Callable<T> wrap(final Callable<T> callable, final ContextSnapshot snapshot) {
         return () -> {
-            if (context == null) {
-                MDC.clear();
-            } else {
-                MDC.setContextMap(context);
+            ContextSnapshot previous = ContextSnapshot.capture();
+            snapshot.install();
+            if (snapshot.getTraceId() == null) {
+                setTraceIdIfAbsent();
             }
-            setTraceIdIfAbsent();
             try {
                 return callable.call();
             } finally {
-                MDC.clear();
+                previous.install();
             }
         };
     }
 
-    public static Runnable wrap(final Runnable runnable, final Map<String, String> context) {
+    public static Runnable wrap(final Runnable runnable, final ContextSnapshot snapshot) {
         return () -> {
-            if (context == null) {
-                MDC.clear();
-            } else {
-                MDC.setContextMap(context);
+            ContextSnapshot previous = ContextSnapshot.capture();
+            snapshot.install();
+            if (snapshot.getTraceId() == null) {
+                setTraceIdIfAbsent();
             }
-            setTraceIdIfAbsent();
             try {
                 runnable.run();
             } finally {
-                MDC.clear();
+                previous.install();
             }
         };
     }
@@ -78,32 +103,32 @@ public class ThreadMdcUtil {
     public static class ThreadPoolTaskExecutorMdcWrapper extends ThreadPoolTaskExecutor {
         @Override
         public void execute(Runnable task) {
-            super.execute(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()));
+            super.execute(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()));
         }
 
         @Override
         public void execute(Runnable task, long startTimeout) {
-            super.execute(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()), startTimeout);
+            super.execute(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()), startTimeout);
         }
 
         @Override
         public <T> Future<T> submit(Callable<T> task) {
-            return super.submit(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()));
+            return super.submit(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()));
         }
 
         @Override
         public Future<?> submit(Runnable task) {
-            return super.submit(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()));
+            return super.submit(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()));
         }
 
         @Override
         public ListenableFuture<?> submitListenable(Runnable task) {
-            return super.submitListenable(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()));
+            return super.submitListenable(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()));
         }
 
         @Override
         public <T> ListenableFuture<T> submitListenable(Callable<T> task) {
-            return super.submitListenable(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()));
+            return super.submitListenable(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()));
         }
     }
 
@@ -129,24 +154,220 @@ public class ThreadMdcUtil {
             super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
         }
 
+        /***
+         * submit和invokeAll/invokeAny最终都经过execute, 只在这里包装一次
+         */
         @Override
         public void execute(Runnable task) {
-            super.execute(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()));
+            super.execute(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()));
+        }
+    }
+
+    /***
+     * 定时任务在schedule时保存上下文, 周期任务每次执行都使用该上下文; execute和submit最终都经过schedule
+     */
+    public static class ScheduledThreadPoolExecutorMdcWrapper extends ScheduledThreadPoolExecutor {
+        public ScheduledThreadPoolExecutorMdcWrapper(int corePoolSize) {
+            super(corePoolSize);
+        }
+
+        public ScheduledThreadPoolExecutorMdcWrapper(int corePoolSize, ThreadFactory threadFactory) {
+            super(corePoolSize, threadFactory);
+        }
+
+        public ScheduledThreadPoolExecutorMdcWrapper(int corePoolSize, RejectedExecutionHandler handler) {
+            super(corePoolSize, handler);
+        }
+
+        public ScheduledThreadPoolExecutorMdcWrapper(int corePoolSize, ThreadFactory threadFactory,
+                                                     RejectedExecutionHandler handler) {
+            super(corePoolSize, threadFactory, handler);
         }
 
         @Override
-        public <T> Future<T> submit(Runnable task, T result) {
-            return super.submit(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()), result);
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return super.schedule(ThreadMdcUtil.wrap(command, ContextSnapshot.capture()), delay, unit);
         }
 
         @Override
-        public <T> Future<T> submit(Callable<T> task) {
-            return super.submit(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()));
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            return super.schedule(ThreadMdcUtil.wrap(callable, ContextSnapshot.capture()), delay, unit);
         }
 
         @Override
-        public Future<?> submit(Runnable task) {
-            return super.submit(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()));
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            return super.scheduleAtFixedRate(ThreadMdcUtil.wrap(command, ContextSnapshot.capture()), initialDelay,
+                    period, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay,
+                                                         TimeUnit unit) {
+            return super.scheduleWithFixedDelay(ThreadMdcUtil.wrap(command, ContextSnapshot.capture()), initialDelay,
+                    delay, unit);
+        }
+    }
+
+    /***
+     * 包装任意Executor, 用于CompletableFuture.*Async(..., executor)等只接受Executor的场景
+     * @param executor  实际执行任务的Executor
+     * @return 提交时保存上下文的Executor, 已经是包装类时原样返回
+     */
+    public static Executor contextExecutor(Executor executor) {
+        if (executor instanceof ContextExecutor || executor instanceof ThreadPoolExecutorMdcWrapper
+                || executor instanceof ScheduledThreadPoolExecutorMdcWrapper || executor instanceof ExecutorServiceMdcWrapper
+                || executor instanceof ForkJoinPoolMdcWrapper || executor instanceof ThreadPoolTaskExecutorMdcWrapper) {
+            return executor;
+        }
+        return new ContextExecutor(executor);
+    }
+
+    /***
+     * 包装ForkJoinPool.commonPool(), 代替CompletableFuture.*Async不传executor时使用的默认线程池
+     */
+    public static Executor contextExecutor() {
+        return COMMON_POOL_EXECUTOR;
+    }
+
+    /***
+     * 每个任务一个线程的ExecutorService, 用于大量并发的阻塞调用(如并行调用多个提供者), 提交时保存上下文.
+     * JDK21及以上使用虚拟线程; 低版本JDK使用最多fallbackMaxThreads个平台线程, 超过时在提交线程中执行
+     * @param namePrefix    线程名前缀
+     * @param fallbackMaxThreads    不支持虚拟线程时的最大线程数
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix, int fallbackMaxThreads) {
+        ExecutorService virtual = VirtualThreads.newThreadPerTaskExecutor(namePrefix);
+        if (virtual != null) {
+            return new ExecutorServiceMdcWrapper(virtual);
+        }
+        return new ThreadPoolExecutorMdcWrapper(0, fallbackMaxThreads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new NamedThreadFactory(namePrefix, true),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /***
+     * 当前JDK是否支持虚拟线程
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreads.SUPPORTED;
+    }
+
+    /***
+     * 包装任意ExecutorService, submit/invokeAll/invokeAny都经过execute
+     */
+    public static class ExecutorServiceMdcWrapper extends AbstractExecutorService {
+        private final ExecutorService delegate;
+
+        public ExecutorServiceMdcWrapper(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            delegate.execute(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()));
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+
+    /***
+     * 编译目标为JDK8, 通过反射使用JDK21的虚拟线程API
+     */
+    private static final class VirtualThreads {
+        private static final Method OF_VIRTUAL = method(Thread.class, "ofVirtual");
+        private static final Method NAME = method(builderClass(), "name", String.class, long.class);
+        private static final Method INHERIT = method(builderClass(), "inheritInheritableThreadLocals", boolean.class);
+        private static final Method FACTORY = method(builderClass(), "factory");
+        private static final Method NEW_EXECUTOR = method(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+        static final boolean SUPPORTED = probe();
+
+        /***
+         * JDK19/20中虚拟线程为预览特性, 未开启时ofVirtual会抛出异常
+         */
+        private static boolean probe() {
+            if (OF_VIRTUAL == null || NAME == null || INHERIT == null || FACTORY == null || NEW_EXECUTOR == null) {
+                return false;
+            }
+            try {
+                OF_VIRTUAL.invoke(null);
+                return true;
+            } catch (Throwable t) {
+                return false;
+            }
+        }
+
+        private static Class<?> builderClass() {
+            try {
+                return Class.forName("java.lang.Thread$Builder");
+            } catch (Throwable t) {
+                return null;
+            }
+        }
+
+        private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+            if (type == null) {
+                return null;
+            }
+            try {
+                return type.getMethod(name, parameterTypes);
+            } catch (Throwable t) {
+                return null;
+            }
+        }
+
+        /***
+         * 不继承InheritableThreadLocal, 否则每个虚拟线程创建时都会复制一次log4j的MDC, 上下文由包装类传递
+         * @return 不支持时返回null
+         */
+        static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+            if (!SUPPORTED) {
+                return null;
+            }
+            try {
+                Object builder = OF_VIRTUAL.invoke(null);
+                builder = NAME.invoke(builder, namePrefix, 0L);
+                builder = INHERIT.invoke(builder, false);
+                ThreadFactory factory = (ThreadFactory) FACTORY.invoke(builder);
+                return (ExecutorService) NEW_EXECUTOR.invoke(null, factory);
+            } catch (Throwable t) {
+                return null;
+            }
+        }
+    }
+
+    private static final class ContextExecutor implements Executor {
+        private final Executor delegate;
+
+        ContextExecutor(Executor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(ThreadMdcUtil.wrap(command, ContextSnapshot.capture()));
         }
     }
 
@@ -166,17 +387,89 @@ public class ThreadMdcUtil {
 
         @Override
         public void execute(Runnable task) {
-            super.execute(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()));
+            super.execute(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()));
         }
 
         @Override
         public <T> ForkJoinTask<T> submit(Runnable task, T result) {
-            return super.submit(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()), result);
+            return super.submit(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()), result);
         }
 
         @Override
         public <T> ForkJoinTask<T> submit(Callable<T> task) {
-            return super.submit(ThreadMdcUtil.wrap(task, MDC.getCopyOfContextMap()));
+            return super.submit(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()));
+        }
+
+        @Override
+        public ForkJoinTask<?> submit(Runnable task) {
+            return super.submit(ThreadMdcUtil.wrap(task, ContextSnapshot.capture()));
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) {
+            ContextSnapshot snapshot = ContextSnapshot.capture();
+            List<Callable<T>> wrapped = new ArrayList<Callable<T>>(tasks.size());
+            for (Callable<T> task : tasks) {
+                wrapped.add(ThreadMdcUtil.wrap(task, snapshot));
+            }
+            return super.invokeAll(wrapped);
+        }
+
+        /***
+         * 以下ForkJoinTask的入口只包装最外层任务, 任务内部fork出的子任务在哪个线程执行由ForkJoinPool决定, 不传递上下文
+         */
+        @Override
+        public <T> T invoke(ForkJoinTask<T> task) {
+            return super.invoke(new ContextForkJoinTask<T>(task, ContextSnapshot.capture()));
+        }
+
+        @Override
+        public void execute(ForkJoinTask<?> task) {
+            super.execute(new ContextForkJoinTask<>(task, ContextSnapshot.capture()));
+        }
+
+        /***
+         * 返回原任务, 原任务在包装任务中执行完成
+         */
+        @Override
+        public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+            super.submit(new ContextForkJoinTask<T>(task, ContextSnapshot.capture()));
+            return task;
+        }
+    }
+
+    /***
+     * 在工作线程中安装上下文后执行原ForkJoinTask
+     */
+    private static final class ContextForkJoinTask<T> extends ForkJoinTask<T> {
+        private static final long serialVersionUID = 1L;
+        private final ForkJoinTask<T> task;
+        private final transient ContextSnapshot snapshot;
+
+        ContextForkJoinTask(ForkJoinTask<T> task, ContextSnapshot snapshot) {
+            this.task = task;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public T getRawResult() {
+            return task.getRawResult();
+        }
+
+        @Override
+        protected void setRawResult(T value) {
+        }
+
+        @Override
+        protected boolean exec() {
+            ContextSnapshot previous = ContextSnapshot.capture();
+            snapshot.install();
+            try {
+                task.invoke();
+            } finally {
+                previous.install();
+            }
+            return true;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.msj.dubbo.spi.extension.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 无锁令牌桶, 只保存下一个令牌的理论到达时间(GCRA), 获取令牌为一次CAS
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class TokenBucket {
+
+    private final long intervalNanos;
+
+    private final long burstNanos;
+
+    private final AtomicLong nextFree;
+
+    /***
+     * @param permitsPerSecond  每秒令牌数
+     */
+    public TokenBucket(double permitsPerSecond) {
+        this(permitsPerSecond, Math.max(1, (long) permitsPerSecond));
+    }
+
+    /***
+     * @param permitsPerSecond  每秒令牌数
+     * @param burst     空闲后最多可连续获取的令牌数
+     */
+    public TokenBucket(double permitsPerSecond, long burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+        this.nextFree = new AtomicLong(System.nanoTime() - burstNanos);
+    }
+
+    /***
+     * 尝试获取一个令牌, 不等待
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        long tat;
+        long next;
+        do {
+            tat = nextFree.get();
+            next = Math.max(tat, now - burstNanos) + intervalNanos;
+            if (next - now > 0) {
+                return false;
+            }
+        } while (!nextFree.compareAndSet(tat, next));
+        return true;
+    }
+}
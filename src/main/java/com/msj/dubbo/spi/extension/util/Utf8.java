@@ -0,0 +1,113 @@
+package com.msj.dubbo.spi.extension.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @Description: 直接把字符编码为UTF-8写入ByteBuffer或byte[], 不产生中间byte[]或String
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public final class Utf8 {
+
+    /**
+     * 单个字符(含代理对)编码后的最大字节数
+     */
+    public static final int MAX_BYTES_PER_CHAR = 4;
+
+    private Utf8() {
+    }
+
+    /***
+     * 从from开始编码, 直到写完或dst剩余空间不足MAX_BYTES_PER_CHAR
+     * @param src   源字符
+     * @param from  起始下标
+     * @param dst   目标buffer
+     * @return 下一个未编码字符的下标, 等于src.length()表示已写完
+     */
+    public static int encode(CharSequence src, int from, ByteBuffer dst) {
+        int len = src.length();
+        int i = from;
+        while (i < len && dst.remaining() >= MAX_BYTES_PER_CHAR) {
+            char c = src.charAt(i++);
+            if (c < 0x80) {
+                dst.put((byte) c);
+            } else if (c < 0x800) {
+                dst.put((byte) (0xC0 | (c >> 6)));
+                dst.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i < len && Character.isLowSurrogate(src.charAt(i))) {
+                int cp = Character.toCodePoint(c, src.charAt(i++));
+                dst.put((byte) (0xF0 | (cp >> 18)));
+                dst.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                dst.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                dst.put((byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                //孤立的代理字符
+                dst.put((byte) '?');
+            } else {
+                dst.put((byte) (0xE0 | (c >> 12)));
+                dst.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                dst.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return i;
+    }
+
+    /***
+     * 编码写入byte[], 调用方保证从offset开始至少有 {@link #encodedLength(CharSequence)} 个字节的空间
+     * @param src   源字符
+     * @param dst   目标数组
+     * @param offset    写入的起始下标
+     * @return 写入后的下一个下标
+     */
+    public static int encode(CharSequence src, byte[] dst, int offset) {
+        int len = src.length();
+        int pos = offset;
+        for (int i = 0; i < len; i++) {
+            char c = src.charAt(i);
+            if (c < 0x80) {
+                dst[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[pos++] = (byte) (0xC0 | (c >> 6));
+                dst[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(src.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, src.charAt(++i));
+                dst[pos++] = (byte) (0xF0 | (cp >> 18));
+                dst[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                dst[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                dst[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                //孤立的代理字符
+                dst[pos++] = (byte) '?';
+            } else {
+                dst[pos++] = (byte) (0xE0 | (c >> 12));
+                dst[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dst[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+
+    /***
+     * 编码后的字节数
+     */
+    public static int encodedLength(CharSequence src) {
+        int len = src.length();
+        int bytes = 0;
+        for (int i = 0; i < len; i++) {
+            char c = src.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(src.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes += 1;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,82 @@
+package com.msj.dubbo.spi.extension.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: SleepyTask常驻消费线程空闲时的等待方式
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public final class WaitStrategy {
+
+    /**
+     * 直接park, 由生产者唤醒
+     */
+    public static final String BLOCKING = "blocking";
+
+    /**
+     * 先自旋, 再yield, 最后park, 由生产者唤醒
+     */
+    public static final String SPIN = "spin";
+
+    /**
+     * 定时park, 生产者不唤醒, 以最多一个周期的延迟换取批量处理
+     */
+    public static final String TIMED = "timed";
+
+    private static final int DEFAULT_SPINS = 1000;
+
+    private static final int DEFAULT_YIELDS = 100;
+
+    final int spins;
+
+    final int yields;
+
+    /**
+     * 大于0时为定时park
+     */
+    final long parkNanos;
+
+    private WaitStrategy(int spins, int yields, long parkNanos) {
+        this.spins = spins;
+        this.yields = yields;
+        this.parkNanos = parkNanos;
+    }
+
+    public static WaitStrategy blocking() {
+        return new WaitStrategy(0, 0, 0);
+    }
+
+    public static WaitStrategy spinYieldPark(int spins, int yields) {
+        return new WaitStrategy(Math.max(0, spins), Math.max(0, yields), 0);
+    }
+
+    public static WaitStrategy timed(long parkTime, TimeUnit unit) {
+        return new WaitStrategy(0, 0, Math.max(1, unit.toNanos(parkTime)));
+    }
+
+    /***
+     * 按名称创建
+     * @param type  blocking/spin/timed, 其他值返回null, 即每次唤醒提交到线程池的旧方式
+     * @param timedParkMicros   timed方式的park时间
+     */
+    public static WaitStrategy parse(String type, long timedParkMicros) {
+        if (BLOCKING.equalsIgnoreCase(type)) {
+            return blocking();
+        }
+        if (SPIN.equalsIgnoreCase(type)) {
+            return spinYieldPark(DEFAULT_SPINS, DEFAULT_YIELDS);
+        }
+        if (TIMED.equalsIgnoreCase(type)) {
+            return timed(timedParkMicros, TimeUnit.MICROSECONDS);
+        }
+        return null;
+    }
+
+    /***
+     * 生产者是否需要唤醒消费线程
+     */
+    boolean isSignalled() {
+        return parkNanos <= 0;
+    }
+}
@@ -0,0 +1,99 @@
+package com.msj.dubbo.spi.extension.benchmark;
+
+import com.msj.dubbo.spi.extension.util.ThreadMdcUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Description: 一次并发提交10000个阻塞调用(每个sleep blockMillis毫秒模拟等待提供者响应)并等待全部完成, 结果为每秒完成的调用数.
+ * virtual为 ThreadMdcUtil.newVirtualThreadPerTaskExecutor, JDK21以下为最多platformThreads个平台线程的降级实现;
+ * platform为固定platformThreads个线程的 ThreadPoolExecutorMdcWrapper. 两者都在提交时保存traceId
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockingFanOutBenchmark {
+
+    private static final int CALLS = 10000;
+
+    @Param({"virtual", "platform"})
+    public String executorType;
+
+    @Param({"200"})
+    public int platformThreads;
+
+    @Param({"10"})
+    public long blockMillis;
+
+    private ExecutorService executor;
+
+    private final AtomicInteger traceIdMissing = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("virtual".equals(executorType)) {
+            executor = ThreadMdcUtil.newVirtualThreadPerTaskExecutor("benchmark-fanout-", platformThreads);
+            if (!ThreadMdcUtil.isVirtualThreadSupported()) {
+                System.out.println("virtual threads are not supported by this JDK, running the fallback executor");
+            }
+        } else {
+            executor = new ThreadMdcUtil.ThreadPoolExecutorMdcWrapper(platformThreads, platformThreads, 0,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        }
+        ThreadMdcUtil.setTraceId("4bf92f3577b34da6a3ce929d0e0e4736");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        if (traceIdMissing.get() > 0) {
+            throw new IllegalStateException(traceIdMissing.get() + " calls ran without the submitter's traceId");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public void blockingCalls() throws InterruptedException {
+        String traceId = ThreadMdcUtil.getTraceId();
+        CountDownLatch done = new CountDownLatch(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            executor.execute(() -> {
+                try {
+                    if (!traceId.equals(ThreadMdcUtil.getTraceId())) {
+                        traceIdMissing.incrementAndGet();
+                    }
+                    Thread.sleep(blockMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
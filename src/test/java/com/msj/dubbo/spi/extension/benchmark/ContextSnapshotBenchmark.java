@@ -0,0 +1,107 @@
+package com.msj.dubbo.spi.extension.benchmark;
+
+import com.msj.dubbo.spi.extension.trace.TraceContext;
+import com.msj.dubbo.spi.extension.util.ContextSnapshot;
+import com.msj.dubbo.spi.extension.util.ThreadMdcUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 跨线程传递MDC的开销(ns). legacy为原实现(提交时 MDC.getCopyOfContextMap, 执行时 setContextMap 再 clear),
+ * snapshot为 ContextSnapshot 的 capture/install/恢复, 两者在同一线程上模拟提交和执行两侧;
+ * submitPlain/submitWrapped 为向单线程池提交任务并等待完成, 不包装与 ThreadPoolExecutorMdcWrapper 包装的对比
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContextSnapshotBenchmark {
+
+    private ExecutorService plain;
+
+    private ExecutorService wrapped;
+
+    private final Runnable task = () -> {
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        plain = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        wrapped = new ThreadMdcUtil.ThreadPoolExecutorMdcWrapper(1, 1, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+    }
+
+    /***
+     * 提交线程处在一次调用中, MDC中有traceId和spanId
+     */
+    @Setup(Level.Iteration)
+    public void inTrace() {
+        TraceContext span = TraceContext.newRoot("4bf92f3577b34da6a3ce929d0e0e4736");
+        ThreadMdcUtil.setTraceId(span.getTraceId());
+        ThreadMdcUtil.setSpanId(span.getSpanId());
+        TraceContext.setCurrent(span);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        plain.shutdown();
+        wrapped.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, String> legacy() {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        MDC.setContextMap(context);
+        ThreadMdcUtil.setTraceIdIfAbsent();
+        MDC.clear();
+        //恢复提交线程的MDC, 下一次调用从相同的状态开始
+        MDC.setContextMap(context);
+        return context;
+    }
+
+    @Benchmark
+    public ContextSnapshot snapshot() {
+        ContextSnapshot snapshot = ContextSnapshot.capture();
+        ContextSnapshot previous = ContextSnapshot.capture();
+        snapshot.install();
+        previous.install();
+        return snapshot;
+    }
+
+    @Benchmark
+    public ContextSnapshot capture() {
+        return ContextSnapshot.capture();
+    }
+
+    @Benchmark
+    public Object submitPlain() throws ExecutionException, InterruptedException {
+        return plain.submit(task).get();
+    }
+
+    @Benchmark
+    public Object submitWrapped() throws ExecutionException, InterruptedException {
+        return wrapped.submit(task).get();
+    }
+}
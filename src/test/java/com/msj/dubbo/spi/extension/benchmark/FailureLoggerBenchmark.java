@@ -0,0 +1,86 @@
+package com.msj.dubbo.spi.extension.benchmark;
+
+import com.msj.dubbo.spi.extension.filter.FailureLogger;
+import org.apache.dubbo.common.logger.LoggerFactory;
+import org.apache.dubbo.rpc.RpcException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 失败风暴中每次失败的记录开销(ns). 每次新建一个栈深约depth层的RpcException(与真实失败相同, 每个异常只取一次栈),
+ * legacy为原指纹(异常链每层调用 getStackTrace() 取前8个栈帧的哈希), record为 FailureLogger.record, 分组已超过输出次数只计数
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FailureLoggerBenchmark {
+
+    private static final String METHOD = "com.demo.DemoService:1.0.0 sayHello(java.lang.String) ";
+
+    @Param({"50"})
+    public int depth;
+
+    private FailureLogger failureLogger;
+
+    @Setup
+    public void setUp() {
+        failureLogger = new FailureLogger(LoggerFactory.getLogger(FailureLoggerBenchmark.class), 0, 0, 3600);
+    }
+
+    @TearDown
+    public void tearDown() {
+        failureLogger.shutdown();
+    }
+
+    private RpcException fail(int remaining) {
+        if (remaining > 0) {
+            return fail(remaining - 1);
+        }
+        return new RpcException(RpcException.TIMEOUT_EXCEPTION, "timeout", new IllegalStateException("down"));
+    }
+
+    @Benchmark
+    public RpcException create() {
+        return fail(depth);
+    }
+
+    @Benchmark
+    public int legacy() {
+        RpcException ex = fail(depth);
+        int hash = 1;
+        Throwable t = ex;
+        for (int causes = 0; t != null && causes < 4; causes++, t = t.getCause()) {
+            hash = 31 * hash + t.getClass().getName().hashCode();
+            if (t instanceof RpcException) {
+                hash = 31 * hash + ((RpcException) t).getCode();
+            }
+            StackTraceElement[] frames = t.getStackTrace();
+            for (int i = 0, n = Math.min(frames.length, 8); i < n; i++) {
+                hash = 31 * hash + frames[i].hashCode();
+            }
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public boolean record() {
+        return failureLogger.record(METHOD, fail(depth));
+    }
+}
@@ -0,0 +1,111 @@
+package com.msj.dubbo.spi.extension.benchmark;
+
+import com.msj.dubbo.spi.extension.filter.RecordQueue;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 1/8/64个生产者时 blocking(ArrayBlockingQueue, 原实现) 与 ring(无锁环形队列) 的入队吞吐,
+ * 一个后台线程持续drain模拟日志线程. 多个生产者时队列基本是满的, 主分数包含返回false的offer,
+ * 比较入队能力看辅助计数 offered(成功入队/us), rejected 为队列满被拒绝的次数
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordQueueBenchmark {
+
+    @Param({RecordQueue.BLOCKING, RecordQueue.RING})
+    public String queueType;
+
+    private RecordQueue queue;
+
+    private Thread consumer;
+
+    private volatile boolean running;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        queue = RecordQueue.newQueue(queueType, 10000);
+        running = true;
+        consumer = new Thread(() -> {
+            while (running) {
+                if (queue.drain(rec -> {
+                }) == 0) {
+                    Thread.yield();
+                }
+            }
+        }, "benchmark-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        consumer.join();
+    }
+
+    /**
+     * 每个生产者线程的成功和失败次数, JMH按迭代汇总为速率
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long offered;
+        public long rejected;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            offered = 0;
+            rejected = 0;
+        }
+    }
+
+    private boolean offer(Counters counters) {
+        boolean offered = queue.offer(System.currentTimeMillis(), "benchmark record");
+        if (offered) {
+            counters.offered++;
+        } else {
+            counters.rejected++;
+        }
+        return offered;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean producers1(Counters counters) {
+        return offer(counters);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean producers8(Counters counters) {
+        return offer(counters);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean producers64(Counters counters) {
+        return offer(counters);
+    }
+}
@@ -0,0 +1,88 @@
+package com.msj.dubbo.spi.extension.benchmark;
+
+import com.msj.dubbo.spi.extension.util.CachedTimestamp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 日志行时间前缀的格式化吞吐(行/秒): 原实现 SimpleDateFormat + Date 与 CachedTimestamp.
+ * 每次调用时间前进 stepMillis 毫秒, 1 对应每秒约1000行的日志, 1000 为每行换一秒(缓存不命中)
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimestampBenchmark {
+
+    private static final String MESSAGE = "[0123456789abcdef0123456789abcdef] consumer[app,10.0.0.1:20880] - sayHello";
+
+    @Param({"1", "1000"})
+    public int stepMillis;
+
+    private long time = 1596160000000L;
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    private final CachedTimestamp timestamp = new CachedTimestamp(false);
+
+    private final CachedTimestamp millisTimestamp = new CachedTimestamp(true);
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(64);
+
+    private long next() {
+        time += stepMillis;
+        return time;
+    }
+
+    /***
+     * 原实现: 每行新建Date并格式化出String
+     */
+    @Benchmark
+    public StringBuilder simpleDateFormat() {
+        line.setLength(0);
+        return line.append(dateFormat.format(new Date(next()))).append(": ").append(MESSAGE);
+    }
+
+    @Benchmark
+    public StringBuilder cachedTimestamp() {
+        line.setLength(0);
+        timestamp.appendTo(next(), line);
+        return line.append(": ").append(MESSAGE);
+    }
+
+    @Benchmark
+    public StringBuilder cachedTimestampMillis() {
+        line.setLength(0);
+        millisTimestamp.appendTo(next(), line);
+        return line.append(": ").append(MESSAGE);
+    }
+
+    /***
+     * channel/mmap输出直接写字节
+     */
+    @Benchmark
+    public ByteBuffer cachedTimestampBytes() {
+        buffer.clear();
+        timestamp.writeTo(next(), buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,62 @@
+package com.msj.dubbo.spi.extension.benchmark;
+
+import com.msj.dubbo.spi.extension.trace.FastTraceIdGenerator;
+import com.msj.dubbo.spi.extension.trace.TraceIdGenerator;
+import com.msj.dubbo.spi.extension.trace.UuidTraceIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 1/8/64个线程同时生成traceId的吞吐: uuid(UUID.randomUUID(), 原实现, 共享SecureRandom) 与 fast(线程本地随机数)
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TraceIdBenchmark {
+
+    @Param({UuidTraceIdGenerator.NAME, FastTraceIdGenerator.NAME})
+    public String generatorName;
+
+    private TraceIdGenerator generator;
+
+    @Setup
+    public void setUp() {
+        generator = UuidTraceIdGenerator.NAME.equals(generatorName)
+                ? new UuidTraceIdGenerator() : new FastTraceIdGenerator();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String threads1() {
+        return generator.generate();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String threads8() {
+        return generator.generate();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String threads64() {
+        return generator.generate();
+    }
+}
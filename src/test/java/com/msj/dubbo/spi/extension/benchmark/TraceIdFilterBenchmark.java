@@ -0,0 +1,140 @@
+package com.msj.dubbo.spi.extension.benchmark;
+
+import com.msj.dubbo.spi.extension.filter.ConsumerTraceIdFilter;
+import com.msj.dubbo.spi.extension.filter.ProviderTraceIdFilter;
+import com.msj.dubbo.spi.extension.trace.FastTraceIdGenerator;
+import com.msj.dubbo.spi.extension.trace.TraceContext;
+import com.msj.dubbo.spi.extension.util.ThreadMdcUtil;
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.rpc.AppResponse;
+import org.apache.dubbo.rpc.Invocation;
+import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.Result;
+import org.apache.dubbo.rpc.RpcContext;
+import org.apache.dubbo.rpc.RpcInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.MDC;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: traceId filter 每次调用增加的耗时(ns): direct为直接调用invoker的基线,
+ * consumerNewTrace为新生成traceId, consumerInTrace为在已有链路中生成子span, 两者都传递traceparent,
+ * provider为解析上游traceparent并安装/恢复MDC. 用 -prof gc 可以看到off与count的每次调用分配相同.
+ * tracelog=sync时测试的log4j配置为WARN, 只包含slf4j的级别判断和参数拼装, 不含appender的IO
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TraceIdFilterBenchmark {
+
+    private static final String TRACE_PARENT = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+
+    @Param({"off", "count", "sync"})
+    public String tracelog;
+
+    private final ConsumerTraceIdFilter consumerFilter = new ConsumerTraceIdFilter();
+
+    private final ProviderTraceIdFilter providerFilter = new ProviderTraceIdFilter();
+
+    private final Result result = new AppResponse("ok");
+
+    private Invoker<Runnable> invoker;
+
+    private final Invocation invocation = new RpcInvocation("run", Runnable.class.getName(), new Class<?>[0], new Object[0]);
+
+    @Setup
+    public void setUp() {
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880/java.lang.Runnable?application=benchmark&tracelog=" + tracelog);
+        invoker = new Invoker<Runnable>() {
+            @Override
+            public Class<Runnable> getInterface() {
+                return Runnable.class;
+            }
+
+            @Override
+            public Result invoke(Invocation invocation) {
+                return result;
+            }
+
+            @Override
+            public URL getUrl() {
+                return url;
+            }
+
+            @Override
+            public boolean isAvailable() {
+                return true;
+            }
+
+            @Override
+            public void destroy() {
+            }
+        };
+    }
+
+    @Benchmark
+    public Result direct() {
+        return invoker.invoke(invocation);
+    }
+
+    /**
+     * 当前线程没有链路上下文, consumer需要新生成traceId
+     */
+    @State(Scope.Thread)
+    public static class NoTrace {
+        @Setup(Level.Iteration)
+        public void setUp() {
+            MDC.remove(ThreadMdcUtil.LOG_TRACE_ID);
+            MDC.remove(TraceContext.LOG_SPAN_ID);
+            TraceContext.setCurrent(null);
+        }
+    }
+
+    /**
+     * 当前线程处在provider的调用中(如provider中再调用其他服务), consumer沿用traceId并生成子span
+     */
+    @State(Scope.Thread)
+    public static class InTrace {
+        @Setup(Level.Iteration)
+        public void setUp() {
+            TraceContext root = TraceContext.newRoot(new FastTraceIdGenerator().generate());
+            ThreadMdcUtil.setTraceId(root.getTraceId());
+            ThreadMdcUtil.setSpanId(root.getSpanId());
+            TraceContext.setCurrent(root);
+        }
+    }
+
+    @Benchmark
+    public Result consumerNewTrace(NoTrace noTrace) {
+        return consumerFilter.invoke(invoker, invocation);
+    }
+
+    @Benchmark
+    public Result consumerInTrace(InTrace inTrace) {
+        return consumerFilter.invoke(invoker, invocation);
+    }
+
+    @Benchmark
+    public Result provider(NoTrace noTrace) {
+        RpcContext context = RpcContext.getContext();
+        context.setAttachment(TraceContext.TRACE_PARENT, TRACE_PARENT);
+        return providerFilter.invoke(invoker, invocation);
+    }
+}
@@ -0,0 +1,146 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.rpc.AppResponse;
+import org.apache.dubbo.rpc.AsyncRpcResult;
+import org.apache.dubbo.rpc.Result;
+import org.apache.dubbo.rpc.RpcContext;
+import org.apache.dubbo.rpc.RpcInvocation;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: AccessLogWrapper 对同步和异步调用结果的记录, 以及shutdown时的释放
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class AccessLogWrapperTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestInvoker invoker;
+
+    @Before
+    public void setUp() {
+        invoker = new TestInvoker("&side=provider");
+        RpcContext.getContext().setUrl(invoker.getUrl());
+        RpcContext.getContext().setLocalAddress("127.0.0.1", 20880);
+        RpcContext.getContext().setRemoteAddress("127.0.0.2", 40000);
+    }
+
+    private static RpcInvocation invocation() {
+        return new RpcInvocation("run", "java.lang.Runnable", new Class<?>[0], new Object[0]);
+    }
+
+    private static AccessLogStats.MethodSnapshot stats(String prefix) {
+        for (AccessLogStats stats : AccessLogStats.all()) {
+            if (stats.getName().equals(prefix)) {
+                return stats.snapshot().get(0);
+            }
+        }
+        throw new AssertionError("no stats for " + prefix);
+    }
+
+    private List<String> awaitLines(String prefix, int count) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            File[] files = folder.getRoot().listFiles((dir, name) -> name.startsWith(prefix + ".") && name.endsWith(".log"));
+            if (files != null && files.length == 1) {
+                List<String> lines = Files.readAllLines(files[0].toPath(), StandardCharsets.UTF_8);
+                if (lines.size() >= count || System.currentTimeMillis() > deadline) {
+                    return lines;
+                }
+            } else if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("no log file for " + prefix);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void asyncResultWithExceptionIsFailure() throws Exception {
+        String prefix = "async-failure";
+        AccessLogWrapper wrapper = new AccessLogWrapper(folder.getRoot().getPath(), prefix);
+        CompletableFuture<AppResponse> future = new CompletableFuture<AppResponse>();
+        invoker.handler = inv -> new AsyncRpcResult(future, inv);
+
+        Result result = wrapper.invoke(invoker, invocation());
+        future.complete(new AppResponse(new IllegalStateException("business failed")));
+        assertTrue(result.hasException());
+
+        AccessLogStats.MethodSnapshot snapshot = stats(prefix);
+        assertEquals(1, snapshot.getFailure());
+        assertEquals(0, snapshot.getSuccess());
+        List<String> lines = awaitLines(prefix, 1);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0), lines.get(0).contains("FAILED(business failed)"));
+    }
+
+    @Test
+    public void completedResultWithExceptionIsFailure() throws Exception {
+        String prefix = "sync-failure";
+        AccessLogWrapper wrapper = new AccessLogWrapper(folder.getRoot().getPath(), prefix);
+        invoker.handler = inv -> AsyncRpcResult.newDefaultAsyncResult(new IllegalArgumentException("bad"), inv);
+        wrapper.invoke(invoker, invocation());
+        invoker.handler = inv -> AsyncRpcResult.newDefaultAsyncResult("ok", inv);
+        wrapper.invoke(invoker, invocation());
+
+        AccessLogStats.MethodSnapshot snapshot = stats(prefix);
+        assertEquals(1, snapshot.getFailure());
+        assertEquals(1, snapshot.getSuccess());
+        List<String> lines = awaitLines(prefix, 2);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).contains("FAILED(bad)"));
+        assertTrue(lines.get(1), lines.get(1).contains("DONE"));
+    }
+
+    @Test
+    public void shutdownFlushesAndReleases() throws Exception {
+        String prefix = "shutdown";
+        URL url = invoker.getUrl().addParameter(AccessLogConfig.ACCESS_LOG_PATH, folder.getRoot().getPath())
+                .addParameter(AccessLogConfig.SHARDS, 2);
+        AccessLogWrapper wrapper = AccessLogWrapper.of(url, prefix);
+        assertSame(wrapper, AccessLogWrapper.of(url, prefix));
+        invoker.handler = inv -> AsyncRpcResult.newDefaultAsyncResult("ok", inv);
+        wrapper.invoke(invoker, invocation());
+
+        AccessLogWrapper.shutdownAll();
+        assertTrue(wrapper.isClosed());
+        //队列中的日志和最后一个区间的统计在shutdown返回前写完
+        File[] logs = folder.getRoot().listFiles((dir, name) -> name.startsWith(prefix + "-") && name.endsWith(".log")
+                && !name.startsWith(prefix + "-stats."));
+        int lines = 0;
+        for (File log : logs) {
+            lines += Files.readAllLines(log.toPath(), StandardCharsets.UTF_8).size();
+        }
+        assertEquals(1, lines);
+        File[] statsFiles = folder.getRoot().listFiles((dir, name) -> name.startsWith(prefix + "-stats."));
+        assertEquals(1, statsFiles.length);
+        assertEquals(1, Files.readAllLines(statsFiles[0].toPath(), StandardCharsets.UTF_8).size());
+        for (AccessLogStats stats : AccessLogStats.all()) {
+            assertNotEquals(prefix, stats.getName());
+        }
+
+        //关闭后调用照常透传, 不再记录
+        assertEquals("ok", wrapper.invoke(invoker, invocation()).getValue());
+        wrapper.shutdown();
+        AccessLogWrapper reopened = AccessLogWrapper.of(url, prefix);
+        assertNotSame(wrapper, reopened);
+        reopened.shutdown();
+    }
+}
@@ -0,0 +1,90 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: AsyncLogger 与shutdown并发记录时, 每条记录要么写入文件要么计入丢失计数
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class AsyncLoggerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Set<String> writtenMessages() throws Exception {
+        Set<String> messages = new HashSet<String>();
+        for (File file : folder.getRoot().listFiles()) {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                String message = line.substring(line.indexOf(": ") + 2);
+                //日志线程写入的丢失计数行
+                if (!message.startsWith("[asyncLogger]")) {
+                    messages.add(message);
+                }
+            }
+        }
+        return messages;
+    }
+
+    @Test
+    public void everyRecordIsWrittenOrCountedAcrossShutdown() throws Exception {
+        for (String queueType : new String[]{RecordQueue.RING, RecordQueue.BLOCKING}) {
+            folder.delete();
+            folder.create();
+            AsyncLogger logger = new AsyncLogger(folder.getRoot() + "/app.", ".log",
+                    new AsyncLogger.TimeBasedRollingPattern("yyyy-MM-dd"), RecordQueue.newQueue(queueType, 64));
+            int producers = 8;
+            AtomicLong attempts = new AtomicLong();
+            Set<String> accepted = ConcurrentHashMap.newKeySet();
+            CountDownLatch started = new CountDownLatch(producers);
+            Thread[] threads = new Thread[producers];
+            for (int t = 0; t < producers; t++) {
+                final int id = t;
+                threads[t] = new Thread(() -> {
+                    started.countDown();
+                    //shutdown之后继续记录一段, 覆盖关闭前后的并发窗口
+                    for (int i = 0; i < 20000; i++) {
+                        String message = "r-" + id + "-" + i;
+                        attempts.incrementAndGet();
+                        if (logger.log(message)) {
+                            accepted.add(message);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            started.await();
+            Thread.sleep(5);
+            logger.shutdown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            Set<String> written = writtenMessages();
+            //返回true的记录都已写入
+            assertTrue(queueType, written.containsAll(accepted));
+            OverflowCounters counters = logger.getOverflowCounters();
+            assertTrue(queueType, counters.getDroppedAfterClose() > 0);
+            assertEquals(queueType, attempts.get(), written.size() + counters.getLost());
+
+            long lost = counters.getLost();
+            assertFalse(logger.log("after shutdown"));
+            assertEquals(lost + 1, counters.getLost());
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: BinaryLogWriter 写出、BinaryLogReader 读回的往返, 以及文件末尾未写完、开头和中间损坏时的恢复
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class BinaryLogWriterTest {
+
+    private static final long TIME = 1596160000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static BinaryLogRecord record(int i) {
+        BinaryLogRecord record = new BinaryLogRecord();
+        record.consumerSide = i % 2 == 0;
+        //十六进制traceId按字节编码, 其他格式按字符串
+        record.traceId = i % 3 == 0 ? "4bf92f35-77b3-4da6-a3ce-929d0e0e4736" : String.format("%032x", i + 1);
+        if (i % 4 != 0) {
+            record.spanId = i % 5 == 0 ? "span-" + i : String.format("%016x", i + 7);
+            record.parentSpanId = i % 4 == 1 ? null : String.format("%016x", i + 9);
+        }
+        record.methodPrefix = "com.demo.DemoService:1.0.0 sayHello(java.lang.String) ";
+        record.application = "demo-" + (i % 2);
+        record.peerApplication = i % 7 == 0 ? null : "peer";
+        record.localHost = "10.0.0.1";
+        record.localPort = 20880;
+        record.remoteHost = "10.0.0." + (i % 5);
+        record.remotePort = 40000 + i;
+        record.elapsed = i * 3L;
+        record.failed = i % 6 == 5;
+        record.failureMessage = record.failed ? "失败 " + i : null;
+        record.arguments = i % 2 == 0 ? "[\"你好, 😀 " + i + "\"]" : null;
+        record.returnValue = record.failed ? null : "{\"value\":" + i + "}";
+        return record;
+    }
+
+    private File write(File file, int from, int count) throws IOException {
+        BinaryLogWriter writer = new BinaryLogWriter();
+        writer.open(file);
+        try {
+            for (int i = from; i < from + count; i++) {
+                if (i % 10 == 9) {
+                    writer.write(TIME + i * 1000L, "overflow " + i);
+                } else {
+                    writer.write(TIME + i * 1000L, record(i));
+                }
+            }
+            writer.flush(true);
+            assertEquals(file.length(), writer.length());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static List<BinaryLogRecord> readAll(BinaryLogReader reader) throws IOException {
+        List<BinaryLogRecord> records = new ArrayList<BinaryLogRecord>();
+        try {
+            BinaryLogRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+
+    private static void assertRecord(int i, BinaryLogRecord actual) {
+        assertEquals(TIME + i * 1000L, actual.getTime());
+        if (i % 10 == 9) {
+            assertFalse(actual.isAccess());
+            assertEquals("overflow " + i, actual.getText());
+            return;
+        }
+        assertTrue(actual.isAccess());
+        BinaryLogRecord expected = record(i);
+        expected.time = TIME + i * 1000L;
+        assertEquals(expected.toText(), actual.toText());
+        assertEquals(expected.toJson(), actual.toJson());
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        File file = write(folder.newFile("access.bin"), 0, 100);
+        List<BinaryLogRecord> records = readAll(BinaryLogReader.open(file));
+        assertEquals(100, records.size());
+        for (int i = 0; i < 100; i++) {
+            assertRecord(i, records.get(i));
+        }
+    }
+
+    @Test
+    public void largeValuesGrowTheFrameBuffer() throws IOException {
+        StringBuilder arguments = new StringBuilder("[\"");
+        while (arguments.length() < 300000) {
+            arguments.append("大参数 large argument ");
+        }
+        arguments.append("\"]");
+        BinaryLogRecord record = record(0);
+        record.arguments = arguments.toString();
+        File file = folder.newFile("large.bin");
+        BinaryLogWriter writer = new BinaryLogWriter();
+        writer.open(file);
+        writer.write(TIME, record);
+        writer.write(TIME + 1, record(1));
+        writer.close();
+
+        List<BinaryLogRecord> records = readAll(BinaryLogReader.open(file));
+        assertEquals(2, records.size());
+        assertEquals(record.arguments, records.get(0).getArguments());
+        assertEquals(record(1).toText(), records.get(1).toText());
+    }
+
+    @Test
+    public void truncatedTailIsIgnoredAndAppendResumes() throws IOException {
+        File file = write(folder.newFile("truncated.bin"), 0, 20);
+        long full = file.length();
+        //进程退出时最后一帧只写了一半
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(full - 5);
+        }
+        BinaryLogReader reader = BinaryLogReader.open(file);
+        List<BinaryLogRecord> records = readAll(reader);
+        assertEquals(19, records.size());
+        for (int i = 0; i < 19; i++) {
+            assertRecord(i, records.get(i));
+        }
+        assertEquals(0, reader.getCorruptedFrames());
+        assertTrue(reader.getSkippedBytes() > 0);
+
+        //重启后追加的RESET帧之后可以继续读取
+        write(file, 20, 10);
+        records = readAll(BinaryLogReader.open(file));
+        assertEquals(29, records.size());
+        for (int i = 0; i < 19; i++) {
+            assertRecord(i, records.get(i));
+        }
+        for (int i = 20; i < 30; i++) {
+            assertRecord(i, records.get(i - 1));
+        }
+    }
+
+    @Test
+    public void corruptedFrameSkipsToNextSegment() throws IOException {
+        File file = write(folder.newFile("corrupted.bin"), 0, 20);
+        long firstSegment = file.length();
+        write(file, 20, 10);
+        //损坏第一段中间的一个字节, 该段之后的记录可能引用了该段字典, 一起跳过
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(firstSegment / 2);
+            int b = raf.read();
+            raf.seek(firstSegment / 2);
+            raf.write(b ^ 0x5A);
+        }
+        BinaryLogReader reader = BinaryLogReader.open(file);
+        List<BinaryLogRecord> records = readAll(reader);
+        assertEquals(1, reader.getCorruptedFrames());
+        int before = records.size() - 10;
+        assertTrue(before > 0 && before < 20);
+        for (int i = 0; i < before; i++) {
+            assertRecord(i, records.get(i));
+        }
+        for (int i = 20; i < 30; i++) {
+            assertRecord(i, records.get(before + i - 20));
+        }
+    }
+
+    @Test
+    public void corruptedFirstResetResyncsToNextSegment() throws IOException {
+        File file = write(folder.newFile("first.bin"), 0, 20);
+        write(file, 20, 10);
+        //翻转第一个RESET帧中的一个字节, 第一段整体跳过
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(3);
+            int b = raf.read();
+            raf.seek(3);
+            raf.write(b ^ 0x5A);
+        }
+        BinaryLogReader reader = BinaryLogReader.open(file);
+        List<BinaryLogRecord> records = readAll(reader);
+        assertEquals(10, records.size());
+        for (int i = 20; i < 30; i++) {
+            assertRecord(i, records.get(i - 20));
+        }
+        assertEquals(1, reader.getCorruptedFrames());
+
+        //TraceSearch按文件查找时不因该文件中断
+        TraceSearch search = new TraceSearch(record(22).traceId, 0, Long.MAX_VALUE);
+        assertEquals(1, search.search(Collections.singletonList(file)).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFileWithoutResetFrame() throws IOException {
+        File file = write(folder.newFile("noreset.bin"), 0, 20);
+        //只有一段, 其RESET帧损坏后找不到可以开始读取的位置
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(0);
+            raf.write(0x7F);
+        }
+        readAll(BinaryLogReader.open(file));
+    }
+
+    @Test
+    public void emptyFileHasNoRecords() throws IOException {
+        File file = folder.newFile("empty.bin");
+        BinaryLogReader reader = BinaryLogReader.open(file);
+        assertNull(reader.next());
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTextLog() throws IOException {
+        File file = folder.newFile("text.log");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write("2020-07-31 10:00:00: [abc] consumer[...]\n".getBytes("UTF-8"));
+        }
+        readAll(BinaryLogReader.open(file));
+    }
+}
@@ -0,0 +1,146 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.apache.dubbo.common.logger.Logger;
+import org.apache.dubbo.rpc.RpcException;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: FailureLogger 的分组、限流汇总、有界输出队列和关闭
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class FailureLoggerTest {
+
+    private static final String METHOD = "com.demo.DemoService:1.0.0 sayHello(java.lang.String) ";
+
+    /***
+     * 只记录warn(String)和warn(String, Throwable)的消息, warnWith中的调用可以阻塞
+     */
+    private static Logger logger(List<String> messages, Runnable warnWith) {
+        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[]{Logger.class},
+                (proxy, method, args) -> {
+                    if ("warn".equals(method.getName()) && args != null && args[0] instanceof String) {
+                        if (args.length == 2) {
+                            warnWith.run();
+                        }
+                        messages.add((String) args[0]);
+                    }
+                    return method.getReturnType() == boolean.class ? Boolean.TRUE : null;
+                });
+    }
+
+    /**
+     * 记录getStackTrace()的调用次数
+     */
+    private static class CountingException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        private final AtomicInteger stackTraceReads;
+
+        CountingException(String message, AtomicInteger stackTraceReads) {
+            super(message);
+            this.stackTraceReads = stackTraceReads;
+        }
+
+        @Override
+        public StackTraceElement[] getStackTrace() {
+            stackTraceReads.incrementAndGet();
+            return super.getStackTrace();
+        }
+    }
+
+    @Test
+    public void stormReadsStackTraceOncePerGroup() {
+        List<String> messages = new CopyOnWriteArrayList<String>();
+        FailureLogger failureLogger = new FailureLogger(logger(messages, () -> {
+        }), 2, 0, 3600);
+        AtomicInteger stackTraceReads = new AtomicInteger();
+        int logged = 0;
+        for (int i = 0; i < 10; i++) {
+            //异常信息不同的同类失败在同一组
+            if (failureLogger.record(METHOD, new CountingException("order " + i, stackTraceReads))) {
+                logged++;
+            }
+        }
+        assertEquals(2, logged);
+        assertEquals(1, stackTraceReads.get());
+
+        failureLogger.shutdown();
+        assertEquals(1, messages.size());
+        String summary = messages.get(0);
+        assertTrue(summary, summary.startsWith("service invoke failed 10 times in last 3600s, 8 without stack trace: "
+                + METHOD.trim() + " " + CountingException.class.getName() + ": order 9 at "
+                + FailureLoggerTest.class.getName() + ".stormReadsStackTraceOncePerGroup("));
+        //已停止汇总, 再次关闭不重复输出
+        failureLogger.shutdown();
+        assertEquals(1, messages.size());
+    }
+
+    @Test
+    public void causesAndRpcCodesSplitGroups() {
+        IllegalStateException cause = new IllegalStateException("x");
+        assertEquals(FailureLogger.fingerprint(new RpcException(RpcException.TIMEOUT_EXCEPTION, "a", cause)),
+                FailureLogger.fingerprint(new RpcException(RpcException.TIMEOUT_EXCEPTION, "b", cause)));
+        assertNotEquals(FailureLogger.fingerprint(new RpcException(RpcException.TIMEOUT_EXCEPTION, "a")),
+                FailureLogger.fingerprint(new RpcException(RpcException.NETWORK_EXCEPTION, "a")));
+        assertNotEquals(FailureLogger.fingerprint(new RpcException("a", cause)),
+                FailureLogger.fingerprint(new RpcException("a", new IllegalArgumentException("x"))));
+
+        FailureLogger failureLogger = new FailureLogger(logger(new CopyOnWriteArrayList<String>(), () -> {
+        }), 1, 0, 0);
+        assertTrue(failureLogger.record(METHOD, new RpcException(RpcException.TIMEOUT_EXCEPTION, "a")));
+        assertTrue(failureLogger.record(METHOD, new RpcException(RpcException.NETWORK_EXCEPTION, "a")));
+        assertFalse(failureLogger.record(METHOD, new RpcException(RpcException.TIMEOUT_EXCEPTION, "b")));
+    }
+
+    @Test
+    public void fullQueueDropsAndReports() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger written = new AtomicInteger();
+        List<String> messages = new CopyOnWriteArrayList<String>();
+        FailureLogger failureLogger = new FailureLogger(logger(messages, () -> {
+            written.incrementAndGet();
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }), 5, 0, 3600);
+        Exception ex = new IllegalStateException("down");
+        try {
+            failureLogger.warn("first", ex);
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            //输出线程阻塞在appender上, 队列1024条之后的丢弃
+            for (int i = 0; i < 1100; i++) {
+                failureLogger.warn("stack " + i, ex);
+            }
+            assertEquals(1100 - 1024, failureLogger.getDropped());
+        } finally {
+            release.countDown();
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (written.get() < 1025 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1025, written.get());
+
+        failureLogger.shutdown();
+        assertEquals(0, failureLogger.getDropped());
+        assertEquals("76 failure stack traces dropped in last 3600s: failure log queue full",
+                messages.get(messages.size() - 1));
+    }
+}
@@ -0,0 +1,135 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.apache.dubbo.common.URL;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @Description: 方法和invoker缓存: 并发首次调用不互相覆盖, 超过上限不清空已有条目而按服务共用, 失效的invoker被移除
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class InvokerLogMetaTest {
+
+    private static final Class<?>[][] OVERLOADS = {
+            {}, {String.class}, {int.class}, {String.class, int.class}, {long.class}, {Object.class}
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void concurrentOverloadsAreCreatedOnce() throws Exception {
+        InvokerLogMeta meta = new InvokerLogMeta(new TestInvoker("&sayHello.accesslogsamplepersecond=10"),
+                new AccessLogConfig(""));
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<InvokerLogMeta.MethodLogMeta[]>> futures = new ArrayList<Future<InvokerLogMeta.MethodLogMeta[]>>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                InvokerLogMeta.MethodLogMeta[] result = new InvokerLogMeta.MethodLogMeta[OVERLOADS.length];
+                for (int i = 0; i < OVERLOADS.length; i++) {
+                    result[i] = meta.method("sayHello", OVERLOADS[i]);
+                }
+                return result;
+            }));
+        }
+        start.countDown();
+        InvokerLogMeta.MethodLogMeta[] first = futures.get(0).get();
+        for (Future<InvokerLogMeta.MethodLogMeta[]> future : futures) {
+            InvokerLogMeta.MethodLogMeta[] result = future.get();
+            for (int i = 0; i < OVERLOADS.length; i++) {
+                assertSame(first[i], result[i]);
+                assertSame(first[i], meta.method("sayHello", OVERLOADS[i]));
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void methodsBeyondLimitDoNotEvictCachedOnes() {
+        InvokerLogMeta meta = new InvokerLogMeta(new TestInvoker("&accesslogsamplepersecond=5"), new AccessLogConfig(""));
+        InvokerLogMeta.MethodLogMeta cached = meta.method("m0", OVERLOADS[0]);
+        AccessLogSampler sampler = cached.sampler;
+        for (int i = 1; i < InvokerLogMeta.MAX_METHODS + 100; i++) {
+            meta.method("m" + i, OVERLOADS[0]);
+        }
+        //已缓存方法的采样器(令牌桶状态)保持不变
+        assertSame(cached, meta.method("m0", OVERLOADS[0]));
+        assertSame(sampler, meta.method("m0", OVERLOADS[0]).sampler);
+        //超过上限的方法不缓存, 共用一个采样器
+        InvokerLogMeta.MethodLogMeta overflow = meta.method("overflow", OVERLOADS[0]);
+        assertNotSame(overflow, meta.method("overflow", OVERLOADS[0]));
+        assertSame(overflow.sampler, meta.method("overflow2", OVERLOADS[0]).sampler);
+        assertEquals("java.lang.Runnable overflow() ", overflow.prefix);
+    }
+
+    @Test
+    public void staleInvokersAreEvicted() throws Exception {
+        AccessLogWrapper wrapper = new AccessLogWrapper(folder.getRoot().getPath(), "meta-test");
+        TestInvoker destroyed = new TestInvoker("");
+        TestInvoker changed = new TestInvoker("");
+        TestInvoker live = new TestInvoker("");
+        InvokerLogMeta liveMeta = wrapper.invokerMeta(live);
+        wrapper.invokerMeta(destroyed);
+        InvokerLogMeta changedMeta = wrapper.invokerMeta(changed);
+        assertSame(liveMeta, wrapper.invokerMeta(live));
+        assertEquals(3, wrapper.cachedInvokers());
+
+        //url变化后重建
+        changed.url = changed.url.addParameter("loglevel", 10);
+        assertNotSame(changedMeta, wrapper.invokerMeta(changed));
+
+        destroyed.destroy();
+        Thread.sleep(1100);
+        //新invoker出现时清理已销毁的invoker, 存活的不受影响
+        wrapper.invokerMeta(new TestInvoker(""));
+        assertEquals(3, wrapper.cachedInvokers());
+        assertSame(liveMeta, wrapper.invokerMeta(live));
+    }
+
+    @Test
+    public void invokersBeyondLimitShareMetaPerService() {
+        AccessLogWrapper wrapper = new AccessLogWrapper(folder.getRoot().getPath(), "meta-shared");
+        List<TestInvoker> cached = new ArrayList<TestInvoker>();
+        for (int i = 0; i < AccessLogWrapper.MAX_CACHED_INVOKERS; i++) {
+            TestInvoker invoker = new TestInvoker("&accesslogsamplepersecond=5");
+            cached.add(invoker);
+            wrapper.invokerMeta(invoker);
+        }
+        assertEquals(AccessLogWrapper.MAX_CACHED_INVOKERS, wrapper.cachedInvokers());
+
+        //超过上限的invoker不缓存, 同一服务的共用一个实例, 方法的采样器(令牌桶)不再每次调用新建
+        InvokerLogMeta shared = wrapper.invokerMeta(new TestInvoker("&accesslogsamplepersecond=5"));
+        InvokerLogMeta.MethodLogMeta method = shared.method("run", OVERLOADS[0]);
+        TestInvoker another = new TestInvoker("&accesslogsamplepersecond=5");
+        assertSame(shared, wrapper.invokerMeta(another));
+        assertSame(method, wrapper.invokerMeta(another).method("run", OVERLOADS[0]));
+        assertEquals(AccessLogWrapper.MAX_CACHED_INVOKERS, wrapper.cachedInvokers());
+
+        //其他服务使用各自的实例
+        TestInvoker otherService = new TestInvoker(URL.valueOf(
+                "dubbo://127.0.0.1:20880/java.lang.Runnable?application=demo&group=g1&version=1.0.0"));
+        InvokerLogMeta otherShared = wrapper.invokerMeta(otherService);
+        assertNotSame(shared, otherShared);
+        assertEquals("g1/java.lang.Runnable:1.0.0", otherShared.serviceKey);
+        assertSame(otherShared, wrapper.invokerMeta(otherService));
+
+        //已缓存的invoker不受影响
+        assertSame(wrapper.invokerMeta(cached.get(0)), wrapper.invokerMeta(cached.get(0)));
+    }
+}
@@ -0,0 +1,95 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: OverflowSpill 的批量写入、滚动和计数
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class OverflowSpillTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ScheduledExecutorService timer;
+
+    @Before
+    public void setUp() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void writesOnCloseAndCounts() throws Exception {
+        File file = new File(folder.getRoot(), "app.overflow.log");
+        OverflowCounters counters = new OverflowCounters();
+        OverflowSpill spill = new OverflowSpill(file, 0, counters, timer, 60000);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(spill.append(0L, "record " + i));
+        }
+        //不到一批且定时未到, 尚未写入
+        assertEquals(0, counters.getSpilled());
+        spill.close();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(10, lines.size());
+        assertTrue(lines.get(9).endsWith(": record 9"));
+        assertEquals(10, counters.getSpilled());
+        assertEquals(0, counters.getSpillFailures());
+
+        assertFalse(spill.append(0L, "after close"));
+        assertEquals(1, counters.getSpillFailures());
+    }
+
+    @Test
+    public void rollsWhenFull() throws Exception {
+        File file = new File(folder.getRoot(), "app.overflow.log");
+        OverflowCounters counters = new OverflowCounters();
+        OverflowSpill spill = new OverflowSpill(file, 10000, counters, timer, 60000);
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 78; i++) {
+            message.append('x');
+        }
+        //每行100字节, 共5000行, 多次滚动后只保留最后两个文件
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(spill.append(0L, message.toString()));
+        }
+        spill.close();
+        File rolled = new File(file.getPath() + ".1");
+        assertTrue(rolled.exists());
+        assertEquals(10000, rolled.length());
+        assertTrue(file.length() <= 10000);
+        assertEquals(5000, counters.getSpilled());
+        assertEquals(2, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void rejectsWhenPendingIsFull() {
+        File file = new File(folder.getRoot(), "app.overflow.log");
+        OverflowCounters counters = new OverflowCounters();
+        OverflowSpill spill = new OverflowSpill(file, 0, counters, timer, 60000);
+        char[] big = new char[OverflowSpill.MAX_PENDING_BYTES];
+        assertFalse(spill.append(0L, new String(big)));
+        assertEquals(1, counters.getSpillFailures());
+        spill.close();
+    }
+}
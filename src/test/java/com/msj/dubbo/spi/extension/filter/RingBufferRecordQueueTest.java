@@ -0,0 +1,131 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: RingBufferRecordQueue 的容量、满/空和多生产者并发正确性
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class RingBufferRecordQueueTest {
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(1, new RingBufferRecordQueue(1).capacity());
+        assertEquals(8, new RingBufferRecordQueue(5).capacity());
+        assertEquals(16384, new RingBufferRecordQueue(10000).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new RingBufferRecordQueue(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapacityAboveMax() {
+        new RingBufferRecordQueue(RingBufferRecordQueue.MAX_CAPACITY + 1);
+    }
+
+    @Test
+    public void fullAndEmpty() {
+        RingBufferRecordQueue queue = new RingBufferRecordQueue(4);
+        assertFalse(queue.discardOldest());
+        assertEquals(0, queue.drain(rec -> {
+        }));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i, "m" + i));
+        }
+        assertFalse(queue.offer(4, "m4"));
+        assertEquals(4, queue.size());
+
+        assertTrue(queue.discardOldest());
+        assertTrue(queue.offer(5, "m5"));
+        List<String> drained = new ArrayList<String>();
+        assertEquals(4, queue.drain(rec -> drained.add(rec.message)));
+        assertEquals("[m1, m2, m3, m5]", drained.toString());
+        assertEquals(0, queue.size());
+
+        //槽位复用后不残留上一轮的内容
+        assertTrue(queue.offer(6, null, null));
+        AtomicReference<String> message = new AtomicReference<String>("x");
+        queue.drain(rec -> message.set(rec.message));
+        assertNull(message.get());
+    }
+
+    @Test
+    public void multipleProducersNoLossNoDuplicate() throws Exception {
+        final int producers = 8;
+        final int perProducer = 200000;
+        final RingBufferRecordQueue queue = new RingBufferRecordQueue(1024);
+        final int[] next = new int[producers];
+        final AtomicReference<String> error = new AtomicReference<String>();
+        final AtomicBoolean done = new AtomicBoolean();
+        final long[] received = new long[1];
+
+        Thread consumer = new Thread(() -> {
+            while (true) {
+                boolean finished = done.get();
+                int n = queue.drain(rec -> {
+                    int producer = (int) (rec.time >>> 32);
+                    int seq = (int) rec.time;
+                    //每个生产者的记录按顺序、不重不漏
+                    if (next[producer] != seq && error.get() == null) {
+                        error.set("producer " + producer + " expect " + next[producer] + " got " + seq);
+                    }
+                    next[producer] = seq + 1;
+                    received[0]++;
+                });
+                if (finished && n == 0) {
+                    return;
+                }
+                if (n == 0) {
+                    Thread.yield();
+                }
+            }
+        });
+        consumer.start();
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final long producer = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!queue.offer(producer << 32 | i, "")) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        done.set(true);
+        consumer.join();
+
+        assertNull(error.get(), error.get());
+        assertEquals((long) producers * perProducer, received[0]);
+        for (int p = 0; p < producers; p++) {
+            assertEquals(perProducer, next[p]);
+        }
+        assertEquals(0, queue.size());
+    }
+}
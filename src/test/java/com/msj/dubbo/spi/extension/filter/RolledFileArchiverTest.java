@@ -0,0 +1,88 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @Description: RolledFileArchiver 按文件数和总大小清理滚动文件
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class RolledFileArchiverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long now = System.currentTimeMillis();
+
+    private File create(String name, long length) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+        //先创建的文件更旧
+        now += 1000;
+        file.setLastModified(now);
+        return file;
+    }
+
+    private Set<String> names() {
+        return new TreeSet<String>(Arrays.asList(folder.getRoot().list()));
+    }
+
+    @Test
+    public void activeSegmentsAreNotCountedOrDeleted() throws IOException {
+        create("app.2020-07-29.0.log", 100);
+        create("app.2020-07-29.1.log", 100);
+        create("app.2020-07-30.0.log.gz", 100);
+        create("app.2020-07-30.0.log.idx", 10);
+        //正在写的mmap分段, 按预分配大小占用空间且修改时间最新
+        create("app.2020-07-31.0.log", 64L * 1024 * 1024);
+        create("app.2020-07-31.1.log", 64L * 1024 * 1024);
+        create("app.overflow.log", 100);
+        create("app.2020-07-30.1.log.gz.tmp", 100);
+
+        new RolledFileArchiver(folder.getRoot() + "/app.", false, 0, 250).retain("app.2020-07-31", ".log");
+
+        //滚动文件从新到旧累计: 110, 210, 310 > 250
+        assertEquals(new TreeSet<String>(Arrays.asList(
+                "app.2020-07-29.1.log",
+                "app.2020-07-30.0.log.gz", "app.2020-07-30.0.log.idx",
+                "app.2020-07-31.0.log", "app.2020-07-31.1.log",
+                "app.overflow.log", "app.2020-07-30.1.log.gz.tmp")), names());
+    }
+
+    @Test
+    public void maxFilesKeepsNewestRolledFiles() throws IOException {
+        create("app.2020-07-28.log.gz", 100);
+        create("app.2020-07-29.log.gz", 100);
+        create("app.2020-07-29.log.idx", 10);
+        create("app.2020-07-30.log.gz", 100);
+        create("app.2020-07-31.log", 100);
+
+        new RolledFileArchiver(folder.getRoot() + "/app.", true, 1, 0).retain("app.2020-07-31", ".log");
+
+        assertEquals(new TreeSet<String>(Arrays.asList("app.2020-07-30.log.gz", "app.2020-07-31.log")), names());
+    }
+
+    @Test
+    public void sizeRolledActiveFileIsNotMistakenForSegment() throws IOException {
+        create("app.2020-07-31.0.log", 100);
+        create("app.2020-07-31.1.log", 100);
+        create("app.2020-07-31.2.log", 100);
+
+        new RolledFileArchiver(folder.getRoot() + "/app.", false, 1, 0).retain("app.2020-07-31.2", ".log");
+
+        assertEquals(new TreeSet<String>(Arrays.asList("app.2020-07-31.1.log", "app.2020-07-31.2.log")), names());
+    }
+}
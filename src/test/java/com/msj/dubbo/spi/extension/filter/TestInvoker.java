@@ -0,0 +1,58 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.rpc.Invocation;
+import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.Result;
+
+import java.util.function.Function;
+
+/**
+ * @Description: 测试用的invoker, 调用结果由handler提供
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+class TestInvoker implements Invoker<Runnable> {
+
+    volatile URL url;
+
+    volatile boolean available = true;
+
+    volatile Function<Invocation, Result> handler;
+
+    TestInvoker(URL url) {
+        this.url = url;
+    }
+
+    TestInvoker(String params) {
+        this(URL.valueOf("dubbo://127.0.0.1:20880/java.lang.Runnable?application=demo" + params));
+    }
+
+    @Override
+    public Class<Runnable> getInterface() {
+        return Runnable.class;
+    }
+
+    @Override
+    public Result invoke(Invocation invocation) {
+        if (handler == null) {
+            throw new UnsupportedOperationException();
+        }
+        return handler.apply(invocation);
+    }
+
+    @Override
+    public URL getUrl() {
+        return url;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @Override
+    public void destroy() {
+        available = false;
+    }
+}
@@ -0,0 +1,53 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.apache.dubbo.common.URL;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: async方式的TraceLogger在dubbo关闭时写完队列中的日志并停止日志线程
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class TraceLoggerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shutdownHookFlushesAsyncTraceLog() throws Exception {
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880/java.lang.Runnable?application=demo&tracelog=async&"
+                + AccessLogConfig.ACCESS_LOG_PATH + "=" + folder.getRoot().getPath());
+        TraceLogger traceLogger = new TraceLogger(url, ProviderTraceIdFilter.class, "provider");
+        assertEquals(TraceLogger.Verbosity.ASYNC, traceLogger.getVerbosity());
+        traceLogger.log("t1", true);
+        traceLogger.log("t2", false);
+
+        new AccessLogShutdownHookCallback().callback();
+        //shutdown返回前已写入, 不依赖定时flush
+        File[] files = folder.getRoot().listFiles((dir, name) -> name.startsWith("demo-provider-trace."));
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        List<String> lines = Files.readAllLines(files[0].toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith("[ProviderTraceIdFilter],new traceId:t1"));
+        assertTrue(lines.get(1), lines.get(1).endsWith("[ProviderTraceIdFilter],traceId:t2"));
+
+        //关闭后的日志只计数, 不再写入
+        traceLogger.log("t3", false);
+        assertEquals(1, traceLogger.getCreated());
+        assertEquals(2, traceLogger.getPropagated());
+        assertEquals(1, traceLogger.getAsyncLogger().getOverflowCounters().getDroppedAfterClose());
+        assertEquals(2, Files.readAllLines(files[0].toPath(), StandardCharsets.UTF_8).size());
+    }
+}
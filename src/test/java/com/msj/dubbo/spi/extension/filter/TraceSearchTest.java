@@ -0,0 +1,210 @@
+package com.msj.dubbo.spi.extension.filter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: 滚动文件建立索引并按块压缩为多个gzip member后, TraceSearch 按索引定位查找的结果与顺序扫描原文件一致,
+ * 包括重启后续写同一天的文件追加member的情况
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class TraceSearchTest {
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 7, 31, 0, 0, 0);
+
+    private static final int TRACES = 200;
+
+    /**
+     * 只出现在第一个文件中间几行的traceId, 只命中一个块
+     */
+    private static final String RARE = "ffffffffffffffffffffffffffffffff";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String traceId(int i) {
+        return String.format("%032x", i);
+    }
+
+    private static long millis(int second) {
+        return START.plusSeconds(second).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /***
+     * 写 count 行访问日志, 每5行带一行多行返回值的续行, 并记录每条记录的完整文本
+     * @param records   每条记录: [秒, traceId, 文本]
+     */
+    private static void writeLog(File file, int from, int count, List<Object[]> records) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = from; i < from + count; i++) {
+                String traceId = i >= 15000 && i < 15003 ? RARE : traceId((i * 7919) % TRACES);
+                String text = START.plusSeconds(i).format(DATE_TIME) + ": [" + traceId + "]consumer[demo,10.0.0.1:"
+                        + (40000 + i % 1000) + "] -> provider[peer,10.0.0.2:20880] - com.demo.DemoService:1.0.0 "
+                        + "sayHello(java.lang.String) [\"你好 " + i + "\"] ,cost:" + (i % 50) + "ms";
+                if (i % 5 == 0) {
+                    text += "\n  {\"value\":" + i + "}";
+                }
+                out.write(text);
+                out.write('\n');
+                records.add(new Object[]{i, traceId, text});
+            }
+        }
+    }
+
+    private static List<String> expected(List<Object[]> records, String traceId, long from, long to) {
+        List<String> result = new ArrayList<String>();
+        for (Object[] record : records) {
+            long time = millis((Integer) record[0]);
+            if (traceId.equals(record[1]) && time >= from && time <= to) {
+                result.add((String) record[2]);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> texts(List<TraceSearch.Match> matches) {
+        List<String> result = new ArrayList<String>();
+        for (TraceSearch.Match match : matches) {
+            result.add(match.getText());
+        }
+        return result;
+    }
+
+    private static byte[] gunzip(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /***
+     * 压缩和建索引在后台线程中执行, 等待原文件被删除且索引已写入
+     */
+    private void archive(RolledFileArchiver archiver, File log) throws Exception {
+        String stem = log.getPath().substring(0, log.getPath().length() - ".log".length());
+        archiver.archive(stem, ".log", new File(folder.getRoot(), "app.2020-08-01.log").getPath());
+        File indexFile = TraceIndex.indexFile(log);
+        long deadline = System.currentTimeMillis() + 30000;
+        while ((log.exists() || !indexFile.exists()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(log.exists());
+        assertTrue(indexFile.exists());
+    }
+
+    @Test
+    public void indexedGzipMembersMatchFullScan() throws Exception {
+        File log = new File(folder.getRoot(), "app.2020-07-31.log");
+        File gz = new File(log.getPath() + RolledFileArchiver.GZIP_SUFFIX);
+        RolledFileArchiver archiver = new RolledFileArchiver(folder.getRoot() + "/app.", true, 0, 0, true);
+        List<Object[]> records = new ArrayList<Object[]>();
+
+        writeLog(log, 0, 30000, records);
+        byte[] first = Files.readAllBytes(log.toPath());
+        archive(archiver, log);
+        TraceIndex index = TraceIndex.read(TraceIndex.indexFile(log));
+        int firstBlocks = index.getBlocks().size();
+        assertTrue(firstBlocks > 5);
+        assertEquals(first.length, index.getDataLength());
+
+        //重启后续写同一天的文件, 追加为新的member, 索引接在原索引之后
+        writeLog(log, 30000, 10000, records);
+        byte[] second = Files.readAllBytes(log.toPath());
+        archive(archiver, log);
+        index = TraceIndex.read(TraceIndex.indexFile(log));
+        assertTrue(index.getBlocks().size() > firstBlocks);
+        assertEquals(first.length + second.length, index.getDataLength());
+        long offset = 0;
+        for (TraceIndex.Block block : index.getBlocks()) {
+            assertEquals(offset, block.getOffset());
+            assertTrue(block.getCompressedOffset() >= 0);
+            offset += block.getLength();
+        }
+        assertEquals(index.getDataLength(), offset);
+
+        //多个member的.gz整体解压(zcat)与原文件拼接一致
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        whole.write(first);
+        whole.write(second);
+        assertArrayEquals(whole.toByteArray(), gunzip(gz));
+
+        for (int i = 0; i < TRACES; i += 37) {
+            String traceId = traceId(i);
+            TraceSearch search = new TraceSearch(traceId, 0, Long.MAX_VALUE);
+            List<TraceSearch.Match> matches = search.search(TraceSearch.logFiles(folder.getRoot(), "app"));
+            assertEquals(traceId, expected(records, traceId, 0, Long.MAX_VALUE), texts(matches));
+            assertEquals(1, search.getIndexedFiles());
+            assertEquals(0, search.getScannedFiles());
+        }
+
+        //时间范围跨两个member
+        long from = millis(29000);
+        long to = millis(31000);
+        List<String> window = texts(TraceSearch.search(folder.getRoot(), "app", traceId(3), from, to));
+        assertFalse(window.isEmpty());
+        assertEquals(expected(records, traceId(3), from, to), window);
+
+        //只出现在一个块中的traceId只解压该块
+        TraceSearch rare = new TraceSearch(RARE, 0, Long.MAX_VALUE);
+        List<TraceSearch.Match> matches = rare.search(TraceSearch.logFiles(folder.getRoot(), "app"));
+        assertEquals(expected(records, RARE, 0, Long.MAX_VALUE), texts(matches));
+        assertEquals(3, matches.size());
+        assertTrue(rare.getScannedBytes() < 2L * TraceIndex.BLOCK_SIZE);
+
+        assertTrue(TraceSearch.search(folder.getRoot(), "app", traceId(TRACES), 0, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void gzipWithoutIndexIsScanned() throws Exception {
+        File log = new File(folder.getRoot(), "app.2020-07-31.log");
+        List<Object[]> records = new ArrayList<Object[]>();
+        writeLog(log, 0, 3000, records);
+        File gz = new File(log.getPath() + RolledFileArchiver.GZIP_SUFFIX);
+        try (InputStream in = new FileInputStream(log);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz.toPath()))) {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+        }
+        assertTrue(log.delete());
+
+        TraceSearch search = new TraceSearch(traceId(7), 0, Long.MAX_VALUE);
+        List<TraceSearch.Match> matches = search.search(TraceSearch.logFiles(folder.getRoot(), "app"));
+        assertEquals(expected(records, traceId(7), 0, Long.MAX_VALUE), texts(matches));
+        assertEquals(0, search.getIndexedFiles());
+        assertEquals(1, search.getScannedFiles());
+    }
+}
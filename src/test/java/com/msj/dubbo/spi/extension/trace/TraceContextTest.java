@@ -0,0 +1,105 @@
+package com.msj.dubbo.spi.extension.trace;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: TraceContext 与 traceparent 的编码和解析
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class TraceContextTest {
+
+    private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+    private static final String SPAN_ID = "00f067aa0ba902b7";
+
+    private static final String TRACE_PARENT = "00-" + TRACE_ID + "-" + SPAN_ID + "-01";
+
+    @Test
+    public void roundTrip() {
+        TraceContext parsed = TraceContext.parse(TRACE_PARENT, null);
+        assertEquals(TRACE_ID, parsed.getTraceId());
+        assertEquals(SPAN_ID, parsed.getSpanId());
+        assertNull(parsed.getParentSpanId());
+        assertTrue(parsed.isSampled());
+        assertEquals(TRACE_PARENT, parsed.toTraceParent());
+
+        TraceContext unsampled = TraceContext.parse("00-" + TRACE_ID + "-" + SPAN_ID + "-00", "");
+        assertFalse(unsampled.isSampled());
+        assertEquals("00-" + TRACE_ID + "-" + SPAN_ID + "-00", unsampled.toTraceParent());
+    }
+
+    @Test
+    public void childKeepsTraceAndLinksParent() {
+        TraceContext root = TraceContext.newRoot(new FastTraceIdGenerator().generate());
+        TraceContext child = root.newChild();
+        assertEquals(root.getTraceId(), child.getTraceId());
+        assertEquals(root.getSpanId(), child.getParentSpanId());
+        assertNotEquals(root.getSpanId(), child.getSpanId());
+
+        //下游解析得到的是上游的span
+        TraceContext remote = TraceContext.parse(child.toTraceParent(), null);
+        assertEquals(child.getTraceId(), remote.getTraceId());
+        assertEquals(child.getSpanId(), remote.getSpanId());
+        assertEquals(child.isSampled(), remote.isSampled());
+    }
+
+    @Test
+    public void uuidTraceIdIsEncodedWithoutDashes() {
+        String uuid = "4bf92f35-77b3-4da6-a3ce-929d0e0e4736";
+        String traceParent = new TraceContext(uuid, SPAN_ID, null, true).toTraceParent();
+        assertEquals(TRACE_PARENT, traceParent);
+
+        //上游传递了traceId附件时优先使用, 保持与MDC一致
+        assertEquals(uuid, TraceContext.parse(traceParent, uuid).getTraceId());
+
+        assertNull(new TraceContext("not-a-hex-trace-id", SPAN_ID, null, true).toTraceParent());
+        assertNull(new TraceContext(TRACE_ID.toUpperCase(), SPAN_ID, null, true).toTraceParent());
+        assertNull(new TraceContext(null, SPAN_ID, null, true).toTraceParent());
+    }
+
+    @Test
+    public void newSpanIdIsSixteenHex() {
+        for (int i = 0; i < 1000; i++) {
+            String spanId = TraceContext.newSpanId();
+            assertEquals(16, spanId.length());
+            assertTrue(spanId, spanId.matches("[0-9a-f]{16}"));
+            assertNotEquals("0000000000000000", spanId);
+        }
+    }
+
+    @Test
+    public void rejectsMalformed() {
+        assertNull(TraceContext.parse(null, null));
+        assertNull(TraceContext.parse("", null));
+        assertNull(TraceContext.parse(TRACE_PARENT.substring(1), null));
+        //分隔符、大写、非十六进制
+        assertNull(TraceContext.parse(TRACE_PARENT.replace('-', '_'), null));
+        assertNull(TraceContext.parse(TRACE_PARENT.toUpperCase(), null));
+        assertNull(TraceContext.parse("00-" + TRACE_ID + "-" + SPAN_ID + "-0g", null));
+        //非法版本和全0 id
+        assertNull(TraceContext.parse("ff" + TRACE_PARENT.substring(2), null));
+        assertNull(TraceContext.parse("00-00000000000000000000000000000000-" + SPAN_ID + "-01", null));
+        assertNull(TraceContext.parse("00-" + TRACE_ID + "-0000000000000000-01", null));
+        //版本00不允许追加字段
+        assertNull(TraceContext.parse(TRACE_PARENT + "-extra", null));
+    }
+
+    @Test
+    public void higherVersionMayAppendFields() {
+        String traceParent = "01-" + TRACE_ID + "-" + SPAN_ID + "-01-extra";
+        TraceContext parsed = TraceContext.parse(traceParent, null);
+        assertEquals(TRACE_ID, parsed.getTraceId());
+        assertEquals(SPAN_ID, parsed.getSpanId());
+        //转发时按本实现支持的版本00编码
+        assertEquals(TRACE_PARENT, parsed.toTraceParent());
+
+        assertNull(TraceContext.parse("01-" + TRACE_ID + "-" + SPAN_ID + "-01x", null));
+    }
+}
@@ -0,0 +1,62 @@
+package com.msj.dubbo.spi.extension.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @Description: CachedTimestamp 与 SimpleDateFormat 的结果一致, 包括夏令时切换和1970年前的时间
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class CachedTimestampTest {
+
+    private static final String[] ZONES = {"Asia/Shanghai", "America/New_York", "Australia/Lord_Howe", "UTC"};
+
+    @Test
+    public void matchesSimpleDateFormat() {
+        Random random = new Random(42);
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            SimpleDateFormat seconds = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            SimpleDateFormat millis = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            seconds.setTimeZone(timeZone);
+            millis.setTimeZone(timeZone);
+            CachedTimestamp cached = new CachedTimestamp(timeZone, false);
+            CachedTimestamp cachedMillis = new CachedTimestamp(timeZone, true);
+            long time = -100000000000L;
+            for (int i = 0; i < 50000; i++) {
+                //大部分在同一秒内前进, 偶尔跳跃
+                time += i % 100 == 0 ? random.nextInt(Integer.MAX_VALUE) * 10L : random.nextInt(300);
+                Date date = new Date(time);
+                assertEquals(zone, seconds.format(date), cached.format(time));
+                StringBuilder sb = new StringBuilder();
+                cachedMillis.appendTo(time, sb);
+                assertEquals(zone, millis.format(date), sb.toString());
+            }
+        }
+    }
+
+    @Test
+    public void bytesMatchChars() {
+        CachedTimestamp cached = new CachedTimestamp(true);
+        ByteBuffer buffer = ByteBuffer.allocate(cached.length());
+        long time = 1596160000123L;
+        cached.writeTo(time, buffer);
+        assertEquals(cached.format(time), new String(buffer.array(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void sameSecondReturnsSameString() {
+        CachedTimestamp cached = new CachedTimestamp(false);
+        assertSame(cached.format(1596160000001L), cached.format(1596160000999L));
+    }
+}
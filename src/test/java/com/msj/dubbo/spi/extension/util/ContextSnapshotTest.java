@@ -0,0 +1,100 @@
+package com.msj.dubbo.spi.extension.util;
+
+import com.msj.dubbo.spi.extension.trace.TraceContext;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @Description: ContextSnapshot 的保存、安装和恢复
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class ContextSnapshotTest {
+
+    @After
+    public void clear() {
+        MDC.clear();
+        TraceContext.setCurrent(null);
+    }
+
+    private static Map<String, String> mdc() {
+        Map<String, String> copy = MDC.getCopyOfContextMap();
+        return copy == null ? Collections.<String, String>emptyMap() : copy;
+    }
+
+    @Test
+    public void installReplacesAndRestores() {
+        TraceContext span = TraceContext.newRoot("4bf92f3577b34da6a3ce929d0e0e4736");
+        ThreadMdcUtil.setTraceId(span.getTraceId());
+        ThreadMdcUtil.setSpanId(span.getSpanId());
+        TraceContext.setCurrent(span);
+        ContextSnapshot snapshot = ContextSnapshot.capture();
+        //上下文未变化时复用快照
+        assertSame(snapshot, ContextSnapshot.capture());
+
+        MDC.clear();
+        MDC.put("user", "u1");
+        TraceContext.setCurrent(null);
+        ContextSnapshot previous = ContextSnapshot.capture();
+
+        snapshot.install();
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put(ThreadMdcUtil.LOG_TRACE_ID, span.getTraceId());
+        expected.put(TraceContext.LOG_SPAN_ID, span.getSpanId());
+        //只有traceId和spanId的快照安装后不残留其他key
+        assertEquals(expected, mdc());
+        assertSame(span, TraceContext.current());
+
+        previous.install();
+        assertEquals(Collections.singletonMap("user", "u1"), mdc());
+        assertNull(TraceContext.current());
+
+        ContextSnapshot.EMPTY.install();
+        assertEquals(Collections.<String, String>emptyMap(), mdc());
+    }
+
+    @Test
+    public void otherKeysAreCopied() {
+        MDC.put(ThreadMdcUtil.LOG_TRACE_ID, "t1");
+        MDC.put("user", "u1");
+        ContextSnapshot snapshot = ContextSnapshot.capture();
+        MDC.clear();
+        MDC.put(TraceContext.LOG_SPAN_ID, "s0");
+
+        snapshot.install();
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put(ThreadMdcUtil.LOG_TRACE_ID, "t1");
+        expected.put("user", "u1");
+        assertEquals(expected, mdc());
+    }
+
+    @Test
+    public void wrappedExecutorRunsTaskInSubmitterContext() throws Exception {
+        ExecutorService executor = new ThreadMdcUtil.ThreadPoolExecutorMdcWrapper(1, 1, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        try {
+            ThreadMdcUtil.setTraceId("t1");
+            assertEquals("t1", executor.submit(ThreadMdcUtil::getTraceId).get());
+            ThreadMdcUtil.setTraceId("t2");
+            assertEquals("t2", executor.submit(ThreadMdcUtil::getTraceId).get());
+            //执行完成后工作线程恢复原有的空上下文
+            MDC.clear();
+            String values = executor.submit(() -> MDC.get("user") + "," + ThreadMdcUtil.getSpanId()).get();
+            assertEquals("null,null", values);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
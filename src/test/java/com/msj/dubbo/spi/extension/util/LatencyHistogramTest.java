@@ -0,0 +1,103 @@
+package com.msj.dubbo.spi.extension.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: LatencyHistogram 的分桶边界、相对误差、百分位和区间快照
+ * @Author: Vincent.M mengshaojie@188.com
+ * @Version: 1.0.0
+ */
+public class LatencyHistogramTest {
+
+    private static final long MAX_VALUE = (1L << 36) - 1;
+
+    @Test
+    public void smallValuesHaveOwnBucket() {
+        for (int v = 0; v < 64; v++) {
+            assertEquals(v, LatencyHistogram.index(v));
+            assertEquals(v, LatencyHistogram.highestEquivalent(v));
+        }
+        //64起每个桶宽2, 与前面的桶连续
+        assertEquals(64, LatencyHistogram.index(64));
+        assertEquals(64, LatencyHistogram.index(65));
+        assertEquals(65, LatencyHistogram.highestEquivalent(64));
+        assertEquals(65, LatencyHistogram.index(66));
+    }
+
+    @Test
+    public void bucketsAreContiguousAndBoundValue() {
+        int last = LatencyHistogram.index(MAX_VALUE);
+        assertEquals(1023, last);
+        assertEquals(MAX_VALUE, LatencyHistogram.highestEquivalent(last));
+        long lowest = 0;
+        for (int i = 0; i <= last; i++) {
+            long highest = LatencyHistogram.highestEquivalent(i);
+            //桶的上下界都落回本桶, 上一桶上界+1即本桶下界
+            assertEquals(i, LatencyHistogram.index(lowest));
+            assertEquals(i, LatencyHistogram.index(highest));
+            assertTrue(highest >= lowest);
+            //相对误差不超过1/32
+            assertTrue("bucket " + i, highest - lowest <= Math.max(0, lowest / 32));
+            lowest = highest + 1;
+        }
+    }
+
+    @Test
+    public void randomValuesWithinRelativeError() {
+        Random random = new Random(42);
+        for (int n = 0; n < 100000; n++) {
+            long value = random.nextLong() >>> (28 + random.nextInt(36));
+            long highest = LatencyHistogram.highestEquivalent(LatencyHistogram.index(value));
+            assertTrue(value + " -> " + highest, highest >= value && highest - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void percentilesAndClamping() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(99));
+        for (int v = 1; v <= 1000; v++) {
+            histogram.record(v);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMean(), 0.001);
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(1, snapshot.getValueAtPercentile(0));
+        assertEquals(503, snapshot.getValueAtPercentile(50));
+        assertEquals(991, snapshot.getValueAtPercentile(99));
+        assertEquals(1000, snapshot.getValueAtPercentile(100));
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        snapshot = histogram.snapshot();
+        assertEquals(1002, snapshot.getCount());
+        assertEquals(MAX_VALUE, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(0));
+        assertEquals(MAX_VALUE, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void minusGivesIntervalDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(5000);
+        LatencyHistogram.Snapshot first = histogram.snapshot();
+        assertEquals(first, first.minus(null));
+
+        histogram.record(20);
+        histogram.record(30);
+        LatencyHistogram.Snapshot interval = histogram.snapshot().minus(first);
+        assertEquals(2, interval.getCount());
+        assertEquals(25.0, interval.getMean(), 0.001);
+        //区间最大值为所在桶的上界, 不受区间外的5000影响
+        assertEquals(30, interval.getMax());
+        assertEquals(20, interval.getValueAtPercentile(50));
+        assertEquals(30, interval.getValueAtPercentile(100));
+    }
+}